@@ -0,0 +1,119 @@
+-- Compares WAL volume and update throughput of a full job lifecycle between the two job_queue layouts:
+--   wide:  status, lease and JSON payload in one row (changelogs 6.0 - 20.0)
+--   split: narrow state table with fillfactor 70 plus an append-only payload table (changelog 21.0)
+--
+-- Run it against a scratch database, it creates and drops the wal_bench schema:
+--   psql -h localhost -p 5435 -U user -d jobs -v jobs=100000 -v payload_bytes=512 -f benchmarks/hot_update_wal.sql
+
+\if :{?jobs}
+\else
+\set jobs 100000
+\endif
+\if :{?payload_bytes}
+\else
+\set payload_bytes 512
+\endif
+
+\set ON_ERROR_STOP on
+SET client_min_messages = warning;
+
+DROP SCHEMA IF EXISTS wal_bench CASCADE;
+CREATE SCHEMA wal_bench;
+
+CREATE TABLE wal_bench.wide (
+    id UUID PRIMARY KEY,
+    prev_job_status VARCHAR(255) NOT NULL DEFAULT 'archive_pending',
+    curr_job_status VARCHAR(255) NOT NULL DEFAULT 'archive_pending',
+    job_status_time TIMESTAMP NOT NULL DEFAULT now(),
+    lease_expire TIMESTAMP,
+    metadata JSON NOT NULL
+);
+CREATE INDEX ON wal_bench.wide (curr_job_status) WHERE curr_job_status = 'archive_pending';
+CREATE INDEX ON wal_bench.wide (lease_expire) WHERE curr_job_status = 'archive_processing';
+
+CREATE TABLE wal_bench.state (
+    id UUID PRIMARY KEY,
+    prev_job_status VARCHAR(255) NOT NULL DEFAULT 'archive_pending',
+    curr_job_status VARCHAR(255) NOT NULL DEFAULT 'archive_pending',
+    job_status_time TIMESTAMP NOT NULL DEFAULT now(),
+    lease_expire TIMESTAMP,
+    attempts INTEGER NOT NULL DEFAULT 0
+) WITH (fillfactor = 70);
+CREATE INDEX ON wal_bench.state (curr_job_status) WHERE curr_job_status = 'archive_pending';
+CREATE INDEX ON wal_bench.state (lease_expire) WHERE curr_job_status = 'archive_processing';
+
+CREATE TABLE wal_bench.payload (
+    id UUID PRIMARY KEY,
+    metadata JSON NOT NULL
+);
+
+CREATE TABLE wal_bench.results (
+    layout TEXT,
+    phase TEXT,
+    wal_bytes NUMERIC,
+    elapsed_ms NUMERIC,
+    hot_updates BIGINT
+);
+
+-- Runs one phase and records the WAL it generated, its duration and how many of its updates were HOT
+CREATE PROCEDURE wal_bench.measure(layout TEXT, phase TEXT, tbl REGCLASS, stmt TEXT) AS $$
+DECLARE
+    start_lsn pg_lsn := pg_current_wal_insert_lsn();
+    start_time TIMESTAMPTZ := clock_timestamp();
+    hot_before BIGINT := pg_stat_get_tuples_hot_updated(tbl) + pg_stat_get_xact_tuples_hot_updated(tbl);
+BEGIN
+    EXECUTE stmt;
+    INSERT INTO wal_bench.results
+    VALUES (layout, phase,
+            pg_wal_lsn_diff(pg_current_wal_insert_lsn(), start_lsn),
+            round(extract(epoch FROM clock_timestamp() - start_time)::numeric * 1000, 1),
+            pg_stat_get_tuples_hot_updated(tbl) + pg_stat_get_xact_tuples_hot_updated(tbl) - hot_before);
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TEMP TABLE bench_jobs AS
+SELECT gen_random_uuid() AS id,
+       json_build_object('documentId', gen_random_uuid(), 'padding', repeat('x', :payload_bytes)) AS metadata
+FROM generate_series(1, :jobs);
+
+-- Wide layout
+CALL wal_bench.measure('wide', '1 enqueue', 'wal_bench.wide',
+    'INSERT INTO wal_bench.wide (id, metadata) SELECT id, metadata FROM bench_jobs');
+CALL wal_bench.measure('wide', '2 claim', 'wal_bench.wide',
+    $$UPDATE wal_bench.wide SET prev_job_status = curr_job_status, curr_job_status = 'archive_processing',
+      lease_expire = now() + interval '15 minutes'$$);
+CALL wal_bench.measure('wide', '3 heartbeat', 'wal_bench.wide',
+    $$UPDATE wal_bench.wide SET lease_expire = now() + interval '30 minutes'$$);
+CALL wal_bench.measure('wide', '4 complete', 'wal_bench.wide',
+    $$UPDATE wal_bench.wide SET prev_job_status = curr_job_status, curr_job_status = 'archive_completed'$$);
+
+-- Split layout
+CALL wal_bench.measure('split', '1 enqueue', 'wal_bench.state',
+    'WITH p AS (INSERT INTO wal_bench.payload (id, metadata) SELECT id, metadata FROM bench_jobs RETURNING id)
+     INSERT INTO wal_bench.state (id) SELECT id FROM p');
+CALL wal_bench.measure('split', '2 claim', 'wal_bench.state',
+    $$UPDATE wal_bench.state SET prev_job_status = curr_job_status, curr_job_status = 'archive_processing',
+      lease_expire = now() + interval '15 minutes', attempts = attempts + 1$$);
+CALL wal_bench.measure('split', '3 heartbeat', 'wal_bench.state',
+    $$UPDATE wal_bench.state SET lease_expire = now() + interval '30 minutes'$$);
+CALL wal_bench.measure('split', '4 complete', 'wal_bench.state',
+    $$UPDATE wal_bench.state SET prev_job_status = curr_job_status, curr_job_status = 'archive_completed'$$);
+
+SELECT layout,
+       phase,
+       pg_size_pretty(wal_bytes) AS wal,
+       round(wal_bytes / :jobs) AS wal_bytes_per_job,
+       elapsed_ms,
+       round(:jobs / nullif(elapsed_ms, 0) * 1000) AS jobs_per_second,
+       hot_updates
+FROM wal_bench.results
+ORDER BY phase, layout;
+
+SELECT layout,
+       pg_size_pretty(sum(wal_bytes)) AS lifecycle_wal,
+       round(sum(wal_bytes) / :jobs) AS wal_bytes_per_job
+FROM wal_bench.results
+GROUP BY layout
+ORDER BY layout;
+
+DROP SCHEMA wal_bench CASCADE;
@@ -0,0 +1,72 @@
+-- Compares the server-side cost of the metadata column as JSON (changelogs 21.0 - 26.0) and JSONB (changelog 27.0):
+-- bulk enqueue, reading the column back as text the way the claim does, and extracting a field.
+--
+-- Run it against a scratch database, it creates and drops the json_bench schema:
+--   psql -h localhost -p 5435 -U user -d jobs -v jobs=100000 -v payload_bytes=512 -f benchmarks/json_vs_jsonb.sql
+
+\if :{?jobs}
+\else
+\set jobs 100000
+\endif
+\if :{?payload_bytes}
+\else
+\set payload_bytes 512
+\endif
+
+\set ON_ERROR_STOP on
+SET client_min_messages = warning;
+
+DROP SCHEMA IF EXISTS json_bench CASCADE;
+CREATE SCHEMA json_bench;
+
+CREATE TABLE json_bench.payload_json (id UUID PRIMARY KEY, metadata JSON NOT NULL);
+CREATE TABLE json_bench.payload_jsonb (id UUID PRIMARY KEY, metadata JSONB NOT NULL);
+
+CREATE TABLE json_bench.results (
+    format TEXT,
+    phase TEXT,
+    elapsed_ms NUMERIC
+);
+
+CREATE PROCEDURE json_bench.measure(format TEXT, phase TEXT, stmt TEXT) AS $$
+DECLARE
+    start_time TIMESTAMPTZ := clock_timestamp();
+BEGIN
+    EXECUTE stmt;
+    INSERT INTO json_bench.results
+    VALUES (format, phase, round(extract(epoch FROM clock_timestamp() - start_time)::numeric * 1000, 1));
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TEMP TABLE bench_jobs AS
+SELECT gen_random_uuid() AS id,
+       json_build_object('documentId', gen_random_uuid(), 'padding', repeat('x', :payload_bytes))::text AS metadata
+FROM generate_series(1, :jobs);
+
+CALL json_bench.measure('json', '1 enqueue',
+    'INSERT INTO json_bench.payload_json SELECT id, metadata::json FROM bench_jobs');
+CALL json_bench.measure('jsonb', '1 enqueue',
+    'INSERT INTO json_bench.payload_jsonb SELECT id, metadata::jsonb FROM bench_jobs');
+
+CALL json_bench.measure('json', '2 read as text',
+    'SELECT max(length(metadata::text)) FROM json_bench.payload_json');
+CALL json_bench.measure('jsonb', '2 read as text',
+    'SELECT max(length(metadata::text)) FROM json_bench.payload_jsonb');
+
+CALL json_bench.measure('json', '3 extract field',
+    $$SELECT count(DISTINCT metadata->>'documentId') FROM json_bench.payload_json$$);
+CALL json_bench.measure('jsonb', '3 extract field',
+    $$SELECT count(DISTINCT metadata->>'documentId') FROM json_bench.payload_jsonb$$);
+
+SELECT format,
+       phase,
+       elapsed_ms,
+       round(:jobs / nullif(elapsed_ms, 0) * 1000) AS rows_per_second,
+       CASE format
+           WHEN 'json' THEN pg_size_pretty(pg_total_relation_size('json_bench.payload_json'))
+           ELSE pg_size_pretty(pg_total_relation_size('json_bench.payload_jsonb'))
+       END AS table_size
+FROM json_bench.results
+ORDER BY phase, format;
+
+DROP SCHEMA json_bench CASCADE;
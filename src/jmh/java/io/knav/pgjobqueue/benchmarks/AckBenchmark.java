@@ -0,0 +1,78 @@
+package io.knav.pgjobqueue.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cost per job of moving a processing job to archive_completed: one UPDATE through job_queue_view and its
+ * handle_job_update() trigger per job, against the array-based direct UPDATE the ack buffer issues.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AckBenchmark {
+
+    private static final int ACK_BATCH = 100;
+
+    @Param({"200000"})
+    public int jobsPerIteration;
+
+    private BenchmarkDatabase database;
+    private UUID[] processing;
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void openDatabase() {
+        database = new BenchmarkDatabase("update-returning", 4);
+    }
+
+    @Setup(Level.Iteration)
+    public void claimBacklog() {
+        processing = database.resetJobs(jobsPerIteration).toArray(UUID[]::new);
+        database.jdbcTemplate.update("""
+                UPDATE job_queue SET prev_job_status = curr_job_status, curr_job_status = 'archive_processing'
+                WHERE queue_name = ?
+                """, BenchmarkDatabase.QUEUE);
+        cursor.set(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void closeDatabase() {
+        database.close();
+    }
+
+    @Benchmark
+    public void viewTriggerPerJob() {
+        database.repository.UpdateJobStatus(next(1)[0], "archive_completed");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACK_BATCH)
+    public int directBatch() {
+        return database.repository.updateJobStatuses(List.of(next(ACK_BATCH)), "archive_processing", "archive_completed");
+    }
+
+    private UUID[] next(int count) {
+        int from = cursor.getAndAdd(count);
+        if (from + count > processing.length) {
+            throw new IllegalStateException("Ran out of processing jobs, raise jobsPerIteration");
+        }
+        UUID[] ids = new UUID[count];
+        System.arraycopy(processing, from, ids, 0, count);
+        return ids;
+    }
+}
@@ -0,0 +1,102 @@
+package io.knav.pgjobqueue.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import io.knav.pgjobqueue.advancedscheduler.codec.JacksonPayloadCodec;
+import io.knav.pgjobqueue.advancedscheduler.codec.PayloadCodec;
+import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
+import io.knav.pgjobqueue.advancedscheduler.entities.Metadata;
+import io.knav.pgjobqueue.advancedscheduler.repositories.AdvancedJobRepository;
+import io.knav.pgjobqueue.advancedscheduler.repositories.AdvisoryLockClaimStrategy;
+import io.knav.pgjobqueue.advancedscheduler.repositories.ClaimStrategy;
+import io.knav.pgjobqueue.advancedscheduler.repositories.TwoStepClaimStrategy;
+import io.knav.pgjobqueue.advancedscheduler.repositories.UpdateReturningClaimStrategy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Wires the repository by hand against the PostgreSQL from docker-compose, already migrated by one application start.
+ * Override the connection with -Djmh.db.url, -Djmh.db.user and -Djmh.db.password.
+ * <p>
+ * Benchmark jobs go to their own queue and are deleted between iterations, so a running application on the same
+ * database does not claim them unless it serves every queue; stop its workers while benchmarking.
+ */
+class BenchmarkDatabase implements AutoCloseable {
+
+    static final String QUEUE = "jmh";
+    private static final int ENQUEUE_CHUNK = 10_000;
+
+    final HikariDataSource dataSource;
+    final JdbcTemplate jdbcTemplate;
+    final AdvancedJobRepository repository;
+    // Outside Spring @Transactional does nothing, claims run in an explicit transaction instead
+    final TransactionTemplate transactions;
+
+    BenchmarkDatabase(String claimStrategy, int poolSize) {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(System.getProperty("jmh.db.url", "jdbc:postgresql://localhost:5435/jobs"));
+        dataSource.setUsername(System.getProperty("jmh.db.user", "user"));
+        dataSource.setPassword(System.getProperty("jmh.db.password", "password"));
+        dataSource.setMaximumPoolSize(poolSize);
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactions = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        PayloadCodec codec = new JacksonPayloadCodec(new ObjectMapper());
+        repository = new AdvancedJobRepository(jdbcTemplate, claimStrategy(claimStrategy, codec), codec,
+                new SimpleMeterRegistry(), Optional.empty(), "copy");
+    }
+
+    private ClaimStrategy claimStrategy(String name, PayloadCodec codec) {
+        return switch (name) {
+            case "update-returning" -> new UpdateReturningClaimStrategy(jdbcTemplate, codec, 900);
+            case "advisory-lock" -> new AdvisoryLockClaimStrategy(jdbcTemplate, codec, 900, 4);
+            default -> new TwoStepClaimStrategy(jdbcTemplate, codec, 900);
+        };
+    }
+
+    /**
+     * Replaces all benchmark jobs with {@code count} fresh pending ones.
+     *
+     * @return the ids of the new jobs
+     */
+    List<UUID> resetJobs(int count) {
+        deleteJobs();
+        List<UUID> ids = new ArrayList<>(count);
+        List<JobNg> chunk = new ArrayList<>(ENQUEUE_CHUNK);
+        for (int i = 0; i < count; i++) {
+            UUID id = UUID.randomUUID();
+            ids.add(id);
+            chunk.add(new JobNg(id, new Metadata(id.toString()), "archive_pending", 0, null, QUEUE, JobNg.DEFAULT_TYPE));
+            if (chunk.size() == ENQUEUE_CHUNK || i == count - 1) {
+                List<JobNg> batch = List.copyOf(chunk);
+                transactions.execute(status -> {
+                    repository.addJobs(batch);
+                    return null;
+                });
+                chunk.clear();
+            }
+        }
+        jdbcTemplate.execute("ANALYZE job_queue");
+        return ids;
+    }
+
+    void deleteJobs() {
+        jdbcTemplate.update("""
+                WITH jobs AS (DELETE FROM job_queue WHERE queue_name = ? RETURNING id, enqueued_at)
+                DELETE FROM job_payload p USING jobs WHERE p.id = jobs.id AND p.enqueued_at = jobs.enqueued_at
+                """, QUEUE);
+    }
+
+    @Override
+    public void close() {
+        deleteJobs();
+        dataSource.close();
+    }
+}
@@ -0,0 +1,76 @@
+package io.knav.pgjobqueue.benchmarks;
+
+import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Claims per second of AdvancedJobRepository.fetchJobs per claim strategy, batch size and number of competing
+ * claimers. Multiply by batchSize for jobs per second. Each iteration starts from a fresh backlog of
+ * jobsPerIteration pending jobs, which must outlast the iteration for the numbers to mean anything.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ClaimBenchmark {
+
+    @Param({"two-step", "update-returning", "advisory-lock"})
+    public String strategy;
+
+    @Param({"1", "10", "100"})
+    public int batchSize;
+
+    @Param({"200000"})
+    public int jobsPerIteration;
+
+    private BenchmarkDatabase database;
+
+    @Setup(Level.Trial)
+    public void openDatabase() {
+        database = new BenchmarkDatabase(strategy, 32);
+    }
+
+    @Setup(Level.Iteration)
+    public void fillBacklog() {
+        database.resetJobs(jobsPerIteration);
+    }
+
+    @TearDown(Level.Trial)
+    public void closeDatabase() {
+        database.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public List<JobNg> claimOneWorker() {
+        return claim();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public List<JobNg> claimEightWorkers() {
+        return claim();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public List<JobNg> claimThirtyTwoWorkers() {
+        return claim();
+    }
+
+    private List<JobNg> claim() {
+        return database.transactions.execute(status -> database.repository.fetchJobs(BenchmarkDatabase.QUEUE, batchSize));
+    }
+}
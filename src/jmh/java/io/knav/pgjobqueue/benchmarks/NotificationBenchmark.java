@@ -0,0 +1,56 @@
+package io.knav.pgjobqueue.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.knav.pgjobqueue.advancedscheduler.services.NotificationPayloads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Notification handling cost on the listener side: parsing one wakeup signal, and turning a coalesced burst of
+ * per-row payloads into the id set the dispatcher claims with.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NotificationBenchmark {
+
+    @Param({"1", "100"})
+    public int burstSize;
+
+    private NotificationPayloads payloads;
+    private String wakeUpPayload;
+    private List<String> rowPayloads;
+
+    @Setup
+    public void setUp() {
+        payloads = new NotificationPayloads(new ObjectMapper());
+        wakeUpPayload = "{\"queue\" : \"default\", \"count\" : 250, \"next_run_at\" : 1767225600000}";
+        rowPayloads = new ArrayList<>(burstSize);
+        for (int i = 0; i < burstSize; i++) {
+            UUID id = UUID.randomUUID();
+            rowPayloads.add("{\"id\":\"" + id + "\",\"metadata\":{\"documentId\":\"" + id + "\"},\"status\":\"archive_pending\"}");
+        }
+    }
+
+    @Benchmark
+    public NotificationPayloads.WakeUpSignal parseWakeUpSignal() {
+        return payloads.wakeUpSignal(wakeUpPayload);
+    }
+
+    @Benchmark
+    public Set<UUID> collectBurst() {
+        return payloads.jobIds(rowPayloads);
+    }
+}
@@ -0,0 +1,63 @@
+package io.knav.pgjobqueue.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.gson.Gson;
+import io.knav.pgjobqueue.advancedscheduler.codec.GsonPayloadCodec;
+import io.knav.pgjobqueue.advancedscheduler.codec.JacksonPayloadCodec;
+import io.knav.pgjobqueue.advancedscheduler.codec.PayloadCodec;
+import io.knav.pgjobqueue.advancedscheduler.entities.Metadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode and decode cost of job metadata per codec, against the old new-Gson-per-call code.
+ * Run with the gc profiler (the default in build.gradle) to compare allocations per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PayloadCodecBenchmark {
+
+    @Param({"jackson", "gson"})
+    public String codecName;
+
+    private PayloadCodec codec;
+    private Metadata metadata;
+    private String json;
+
+    @Setup
+    public void setUp() {
+        codec = "gson".equals(codecName) ? new GsonPayloadCodec() : new JacksonPayloadCodec(new ObjectMapper());
+        metadata = new Metadata(UUID.randomUUID().toString());
+        json = codec.encode(metadata);
+    }
+
+    @Benchmark
+    public String encode() {
+        return codec.encode(metadata);
+    }
+
+    @Benchmark
+    public Metadata decode() {
+        return codec.decode(json);
+    }
+
+    @Benchmark
+    public String encodeWithGsonPerCall() {
+        return new Gson().toJson(metadata);
+    }
+
+    @Benchmark
+    public Metadata decodeWithGsonPerCall() {
+        return new Gson().fromJson(json, Metadata.class);
+    }
+}
@@ -0,0 +1,26 @@
+package io.knav.pgjobqueue.advancedscheduler.codec;
+
+import com.google.gson.Gson;
+import io.knav.pgjobqueue.advancedscheduler.entities.Metadata;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Encodes with one shared Gson instance, which is thread-safe and caches its type adapters.
+ */
+@Component
+@ConditionalOnProperty(name = "jobqueue.payload.codec", havingValue = "gson")
+public class GsonPayloadCodec implements PayloadCodec {
+
+    private final Gson gson = new Gson();
+
+    @Override
+    public String encode(Metadata metadata) {
+        return gson.toJson(metadata);
+    }
+
+    @Override
+    public Metadata decode(String json) {
+        return gson.fromJson(json, Metadata.class);
+    }
+}
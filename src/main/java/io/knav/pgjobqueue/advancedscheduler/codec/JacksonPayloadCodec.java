@@ -0,0 +1,48 @@
+package io.knav.pgjobqueue.advancedscheduler.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.knav.pgjobqueue.advancedscheduler.entities.Metadata;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Encodes with a reader and writer bound to Metadata once, so no per-call type lookup or serializer
+ * resolution happens. ObjectReader and ObjectWriter are immutable and safe to share between threads.
+ */
+@Component
+@ConditionalOnProperty(name = "jobqueue.payload.codec", havingValue = "jackson", matchIfMissing = true)
+public class JacksonPayloadCodec implements PayloadCodec {
+
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+
+    @Autowired
+    public JacksonPayloadCodec(ObjectMapper objectMapper) {
+        this.reader = objectMapper.readerFor(Metadata.class);
+        this.writer = objectMapper.writerFor(Metadata.class);
+    }
+
+    @Override
+    public String encode(Metadata metadata) {
+        try {
+            return writer.writeValueAsString(metadata);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error encoding job metadata", e);
+        }
+    }
+
+    @Override
+    public Metadata decode(String json) {
+        try {
+            return reader.readValue(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error decoding job metadata: " + json, e);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package io.knav.pgjobqueue.advancedscheduler.codec;
+
+import io.knav.pgjobqueue.advancedscheduler.entities.Metadata;
+
+/**
+ * Turns job metadata into the JSON text stored in job_payload.metadata and back.
+ * Exactly one implementation is active, picked with {@code jobqueue.payload.codec} ({@code jackson} or {@code gson}).
+ * Implementations are shared by every enqueue and claim, so they must be thread-safe and must not build
+ * serializer state per call.
+ */
+public interface PayloadCodec {
+
+    String encode(Metadata metadata);
+
+    Metadata decode(String json);
+}
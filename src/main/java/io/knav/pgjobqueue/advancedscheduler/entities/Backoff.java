@@ -0,0 +1,25 @@
+package io.knav.pgjobqueue.advancedscheduler.entities;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Capped exponential backoff with equal jitter, shared by job retries and LISTEN reconnects.
+ */
+public final class Backoff {
+
+    // initialMs << 30 is already far beyond any cap
+    private static final int MAX_DOUBLINGS = 30;
+
+    private Backoff() {
+    }
+
+    /**
+     * @return between half and all of {@code initialMs * 2^doublings}, capped at {@code maxMs}. The jitter spreads
+     * out retries that started together, e.g. after an outage, so they do not all come back at once; the lower
+     * half keeps a minimum pause between them.
+     */
+    public static long jitteredMs(int doublings, long initialMs, long maxMs) {
+        long ceiling = Math.min(maxMs, initialMs << Math.min(Math.max(doublings, 0), MAX_DOUBLINGS));
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+}
@@ -0,0 +1,21 @@
+package io.knav.pgjobqueue.advancedscheduler.entities;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Outcome of one enqueue round trip: the ids of the batch and how long the write took.
+ * Every batch commits on its own; a failed batch wrote none of its ids and does not affect the others.
+ *
+ * @param error why the batch was not written, null when it was
+ */
+public record EnqueueBatchResult(int batch, List<UUID> ids, long elapsedMs, String error) {
+
+    public EnqueueBatchResult(int batch, List<UUID> ids, long elapsedMs) {
+        this(batch, ids, elapsedMs, null);
+    }
+
+    public boolean succeeded() {
+        return error == null;
+    }
+}
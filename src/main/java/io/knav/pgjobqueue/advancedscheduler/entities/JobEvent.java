@@ -0,0 +1,19 @@
+package io.knav.pgjobqueue.advancedscheduler.entities;
+
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * A job_queue job reaching a status, as streamed to event subscribers.
+ */
+public record JobEvent(UUID jobId, String queue, String status) {
+
+    private static final Set<String> TERMINAL_STATUSES = Set.of("archive_completed", "archive_dead", "job_ready_for_deletion");
+
+    /**
+     * @return true if the job will not change status again on its own
+     */
+    public boolean isTerminal() {
+        return TERMINAL_STATUSES.contains(status);
+    }
+}
@@ -1,9 +1,31 @@
 package io.knav.pgjobqueue.advancedscheduler.entities;
 
+import java.time.Instant;
 import java.util.Objects;
 import java.util.UUID;
 
-public record JobNg(UUID id, Metadata metadata, String CurrentJobStatus) {
+/**
+ * @param priority   higher runs first
+ * @param runAt      earliest time the job may run, null for as soon as possible
+ * @param queueName  queue (tenant) the job is claimed from
+ * @param jobType    picks the JobHandler that processes the job
+ * @param enqueuedAt when the job was written to job_queue, null for jobs not enqueued yet
+ * @param attempts   times the job has been claimed, this claim included
+ */
+public record JobNg(UUID id, Metadata metadata, String CurrentJobStatus, int priority, Instant runAt, String queueName,
+                    String jobType, Instant enqueuedAt, int attempts) {
+
+    public static final String DEFAULT_QUEUE = "default";
+    public static final String DEFAULT_TYPE = "archive";
+
+    public JobNg(UUID id, Metadata metadata, String CurrentJobStatus) {
+        this(id, metadata, CurrentJobStatus, 0, null, DEFAULT_QUEUE, DEFAULT_TYPE);
+    }
+
+    public JobNg(UUID id, Metadata metadata, String CurrentJobStatus, int priority, Instant runAt, String queueName,
+                 String jobType) {
+        this(id, metadata, CurrentJobStatus, priority, runAt, queueName, jobType, null, 0);
+    }
 
     public boolean isProcessable() {
        return Objects.equals(this.CurrentJobStatus, "archive_pending");
@@ -0,0 +1,32 @@
+package io.knav.pgjobqueue.advancedscheduler.entities;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Outcome of one job handed to a JobHandler.
+ *
+ * @param error why the job failed, null when it succeeded
+ * @param next  follow-up jobs of a successful job, enqueued in the same statement that completes it
+ */
+public record JobResult(UUID jobId, boolean succeeded, String error, List<JobNg> next) {
+
+    public JobResult(UUID jobId, boolean succeeded, String error) {
+        this(jobId, succeeded, error, List.of());
+    }
+
+    public static JobResult success(UUID jobId) {
+        return new JobResult(jobId, true, null);
+    }
+
+    /**
+     * Completes the job and starts the next stage of its pipeline with {@code next}.
+     */
+    public static JobResult success(UUID jobId, List<JobNg> next) {
+        return new JobResult(jobId, true, null, List.copyOf(next));
+    }
+
+    public static JobResult failure(UUID jobId, String error) {
+        return new JobResult(jobId, false, error);
+    }
+}
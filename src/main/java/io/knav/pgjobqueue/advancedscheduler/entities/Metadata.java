@@ -1,19 +1,20 @@
 package io.knav.pgjobqueue.advancedscheduler.entities;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.gson.Gson;
 
 public record Metadata(String documentId) {
 
+    // Gson is thread-safe; building one per call threw away its type adapter cache every time
+    private static final Gson GSON = new Gson();
+
+    /**
+     * Kept for callers outside the job queue, which encodes through PayloadCodec.
+     */
     public String asJson() {
-        var gson = new Gson();
-        return gson.toJson(this);
+        return GSON.toJson(this);
     }
 
     public static Metadata fromJson(String json) {
-
-        var gson = new Gson();
-        return gson.fromJson(json, Metadata.class);
+        return GSON.fromJson(json, Metadata.class);
     }
 }
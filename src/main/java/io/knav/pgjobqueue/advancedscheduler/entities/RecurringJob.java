@@ -0,0 +1,55 @@
+package io.knav.pgjobqueue.advancedscheduler.entities;
+
+import org.springframework.scheduling.support.CronExpression;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A row of recurring_jobs: a job enqueued on every fire of its cron expression.
+ *
+ * @param cron       Spring cron expression, evaluated in UTC
+ * @param nextFireAt the first fire that has not been enqueued yet
+ * @param catchUp    whether fires missed while no node was leader are enqueued one by one or collapse into one
+ */
+public record RecurringJob(String name, String cron, String jobType, String queueName, int priority,
+                           Metadata metadata, Instant nextFireAt, boolean catchUp) {
+
+    /**
+     * @param fireTimes  the fires to enqueue, each job runs at its fire time
+     * @param nextFireAt the fire after them, null if the expression never fires again
+     */
+    public record Fires(List<Instant> fireTimes, Instant nextFireAt) {
+    }
+
+    /**
+     * Works out the fires that are due at {@code now}. With catch-up, at most {@code maxFires} of them are
+     * returned and the rest stay due for the next call, so a long outage is caught up in batches.
+     *
+     * @throws IllegalArgumentException if the cron expression is invalid
+     */
+    public Fires dueFires(Instant now, int maxFires) {
+        CronExpression expression = CronExpression.parse(cron);
+        if (nextFireAt.isAfter(now)) {
+            return new Fires(List.of(), nextFireAt);
+        }
+        if (!catchUp) {
+            return new Fires(List.of(now), next(expression, now));
+        }
+        List<Instant> fireTimes = new ArrayList<>();
+        Instant fireAt = nextFireAt;
+        while (fireAt != null && !fireAt.isAfter(now) && fireTimes.size() < maxFires) {
+            fireTimes.add(fireAt);
+            fireAt = next(expression, fireAt);
+        }
+        return new Fires(fireTimes, fireAt);
+    }
+
+    private static Instant next(CronExpression expression, Instant after) {
+        ZonedDateTime next = expression.next(after.atZone(ZoneOffset.UTC));
+        return next == null ? null : next.toInstant();
+    }
+}
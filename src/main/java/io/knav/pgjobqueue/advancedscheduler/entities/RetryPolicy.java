@@ -0,0 +1,33 @@
+package io.knav.pgjobqueue.advancedscheduler.entities;
+
+import java.time.Duration;
+
+/**
+ * How often a failed job is tried again and how long it waits in between.
+ *
+ * @param maxAttempts    claims a job gets before it is dead-lettered, the first one included
+ * @param initialBackoff wait after the first failed attempt, doubled after every further one
+ * @param maxBackoff     cap of the doubled wait
+ */
+public record RetryPolicy(int maxAttempts, Duration initialBackoff, Duration maxBackoff) {
+
+    public RetryPolicy withMaxAttempts(int maxAttempts) {
+        return new RetryPolicy(maxAttempts, initialBackoff, maxBackoff);
+    }
+
+    public RetryPolicy withBackoff(Duration initialBackoff, Duration maxBackoff) {
+        return new RetryPolicy(maxAttempts, initialBackoff, maxBackoff);
+    }
+
+    public boolean exhausted(int attempts) {
+        return attempts >= maxAttempts;
+    }
+
+    /**
+     * Wait before the attempt after {@code attempts} failed ones: {@code initialBackoff * 2^(attempts - 1)}, capped
+     * at {@code maxBackoff}, with {@link Backoff} jitter.
+     */
+    public Duration backoff(int attempts) {
+        return Duration.ofMillis(Backoff.jitteredMs(attempts - 1, initialBackoff.toMillis(), maxBackoff.toMillis()));
+    }
+}
@@ -0,0 +1,146 @@
+package io.knav.pgjobqueue.advancedscheduler.loadtest;
+
+import io.knav.pgjobqueue.advancedscheduler.entities.EnqueueBatchResult;
+import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
+import io.knav.pgjobqueue.advancedscheduler.entities.Metadata;
+import io.knav.pgjobqueue.advancedscheduler.services.JobEnqueueService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/*
+Producer side of the end-to-end load test.
+
+Enqueues loadtest jobs following a LoadProfile for the configured duration, then waits for the jobs to drain
+and prints the final LoadTestReport. Jobs go through JobEnqueueService, the same batched path as the bulk API.
+
+To load several nodes, start more instances with jobqueue.loadtest.enabled=true and
+jobqueue.loadtest.producer.enabled=false: they process and report their share of the jobs, while the producing
+node only waits for its own share before printing the final report. Worker threads per node are the usual
+jobqueue.worker.* settings.
+ */
+@Component
+@ConditionalOnProperty(name = "jobqueue.loadtest.enabled", havingValue = "true")
+public class LoadGenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private final JobEnqueueService enqueueService;
+    private final LoadTestRecorder recorder;
+    private final LoadProfile profile;
+    private final boolean enabled;
+    private final String queueName;
+    private final long tickMs;
+    private final long drainTimeoutMs;
+
+    private volatile boolean running;
+    private Thread producerThread;
+
+    @Autowired
+    public LoadGenerator(JobEnqueueService enqueueService,
+                         LoadTestRecorder recorder,
+                         @Value("${jobqueue.loadtest.producer.enabled:true}") boolean enabled,
+                         @Value("${jobqueue.loadtest.producer.profile:constant}") String shape,
+                         @Value("${jobqueue.loadtest.producer.rate-per-second:500}") double ratePerSecond,
+                         @Value("${jobqueue.loadtest.producer.start-rate-per-second:0}") double startRatePerSecond,
+                         @Value("${jobqueue.loadtest.producer.burst-size:1000}") int burstSize,
+                         @Value("${jobqueue.loadtest.producer.burst-interval-ms:5000}") long burstIntervalMs,
+                         @Value("${jobqueue.loadtest.producer.duration-seconds:60}") long durationSeconds,
+                         @Value("${jobqueue.loadtest.producer.queue:default}") String queueName,
+                         @Value("${jobqueue.loadtest.producer.tick-ms:10}") long tickMs,
+                         @Value("${jobqueue.loadtest.producer.drain-timeout-seconds:60}") long drainTimeoutSeconds) {
+
+        this.enqueueService = enqueueService;
+        this.recorder = recorder;
+        this.profile = new LoadProfile(shape, ratePerSecond, startRatePerSecond, burstSize, burstIntervalMs,
+                TimeUnit.SECONDS.toMillis(durationSeconds));
+        this.enabled = enabled;
+        this.queueName = queueName;
+        this.tickMs = tickMs;
+        this.drainTimeoutMs = TimeUnit.SECONDS.toMillis(drainTimeoutSeconds);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        producerThread = new Thread(this::run, "load-test-producer");
+        producerThread.setDaemon(true);
+        producerThread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        producerThread.interrupt();
+    }
+
+    private void run() {
+        try {
+            long stored = produce();
+            log.info("Load test producer finished after {} jobs, waiting for them to drain", stored);
+            awaitDrained(stored);
+            log.info(LoadTestRecorder.format(recorder.report()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Load test producer failed", e);
+        }
+    }
+
+    private long produce() throws InterruptedException {
+        long start = System.nanoTime();
+        long produced = 0;
+        long stored = 0;
+        while (running) {
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (elapsedMs >= profile.durationMs()) {
+                break;
+            }
+            // Catches up in one batch when an enqueue took longer than a tick, so the rate holds on average
+            long due = profile.jobsDueBy(elapsedMs) - produced;
+            if (due > 0) {
+                long first = produced;
+                int enqueued = enqueueService.enqueue(LongStream.range(first, first + due)
+                                .mapToObj(this::newJob)
+                                .iterator())
+                        .stream()
+                        .filter(EnqueueBatchResult::succeeded)
+                        .mapToInt(result -> result.ids().size())
+                        .sum();
+                // Failed batches are not retried; the drain waits only for the jobs that were stored
+                produced += due;
+                stored += enqueued;
+                recorder.recordEnqueued(enqueued);
+            }
+            TimeUnit.MILLISECONDS.sleep(tickMs);
+        }
+        return stored;
+    }
+
+    private void awaitDrained(long produced) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainTimeoutMs);
+        while (running && recorder.processed() < produced && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+    }
+
+    private JobNg newJob(long sequence) {
+        return new JobNg(UUID.randomUUID(), new Metadata("loadtest-" + sequence), "archive_pending", 0, null,
+                queueName, LoadTestJobHandler.JOB_TYPE);
+    }
+}
@@ -0,0 +1,53 @@
+package io.knav.pgjobqueue.advancedscheduler.loadtest;
+
+import java.util.Locale;
+
+/**
+ * Shape of the producer rate over a load test run.
+ * <ul>
+ *     <li>{@code constant}: {@code rate} jobs per second throughout</li>
+ *     <li>{@code ramp}: linear from {@code startRate} to {@code rate} jobs per second over the run</li>
+ *     <li>{@code bursty}: {@code burstSize} jobs at once every {@code burstInterval}</li>
+ * </ul>
+ */
+final class LoadProfile {
+
+    enum Shape {CONSTANT, RAMP, BURSTY}
+
+    private final Shape shape;
+    private final double rate;
+    private final double startRate;
+    private final int burstSize;
+    private final long burstIntervalMs;
+    private final long durationMs;
+
+    LoadProfile(String shape, double rate, double startRate, int burstSize, long burstIntervalMs, long durationMs) {
+        this.shape = Shape.valueOf(shape.trim().toUpperCase(Locale.ROOT));
+        if (rate < 0 || startRate < 0 || burstSize < 0 || burstIntervalMs <= 0 || durationMs <= 0) {
+            throw new IllegalArgumentException("Invalid load profile " + shape + ": rate=" + rate + ", startRate=" + startRate
+                    + ", burstSize=" + burstSize + ", burstIntervalMs=" + burstIntervalMs + ", durationMs=" + durationMs);
+        }
+        this.rate = rate;
+        this.startRate = startRate;
+        this.burstSize = burstSize;
+        this.burstIntervalMs = burstIntervalMs;
+        this.durationMs = durationMs;
+    }
+
+    long durationMs() {
+        return durationMs;
+    }
+
+    /**
+     * @return how many jobs should have been enqueued in total once {@code elapsedMs} of the run have passed
+     */
+    long jobsDueBy(long elapsedMs) {
+        long t = Math.min(Math.max(elapsedMs, 0), durationMs);
+        return switch (shape) {
+            case CONSTANT -> (long) (rate * t / 1000);
+            // Area under the line from startRate to rate
+            case RAMP -> (long) ((startRate * t + (rate - startRate) * t * t / (2.0 * durationMs)) / 1000);
+            case BURSTY -> burstSize * (t / burstIntervalMs + 1);
+        };
+    }
+}
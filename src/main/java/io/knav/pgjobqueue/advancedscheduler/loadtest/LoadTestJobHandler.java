@@ -0,0 +1,89 @@
+package io.knav.pgjobqueue.advancedscheduler.loadtest;
+
+import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
+import io.knav.pgjobqueue.advancedscheduler.entities.JobResult;
+import io.knav.pgjobqueue.advancedscheduler.services.JobHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handles {@code loadtest} jobs by sleeping for a sampled processing time and failing a configured share of them.
+ */
+@Component
+@ConditionalOnProperty(name = "jobqueue.loadtest.enabled", havingValue = "true")
+public class LoadTestJobHandler implements JobHandler {
+
+    public static final String JOB_TYPE = "loadtest";
+
+    enum ProcessingTime {
+        FIXED, UNIFORM, EXPONENTIAL,
+        // sigma = 1, a long tail that shows up in p99 and p999
+        LOGNORMAL;
+
+        long sampleMicros(double meanMs, ThreadLocalRandom random) {
+            double ms = switch (this) {
+                case FIXED -> meanMs;
+                case UNIFORM -> random.nextDouble(2 * meanMs);
+                case EXPONENTIAL -> -meanMs * Math.log(1 - random.nextDouble());
+                case LOGNORMAL -> Math.exp(Math.log(meanMs) - 0.5 + random.nextGaussian());
+            };
+            return (long) (ms * 1000);
+        }
+    }
+
+    private final LoadTestRecorder recorder;
+    private final ProcessingTime processingTime;
+    private final double meanProcessingMs;
+    private final double failureRate;
+    private final int batchSize;
+
+    @Autowired
+    public LoadTestJobHandler(LoadTestRecorder recorder,
+                              @Value("${jobqueue.loadtest.processing.distribution:exponential}") String distribution,
+                              @Value("${jobqueue.loadtest.processing.mean-ms:20}") double meanProcessingMs,
+                              @Value("${jobqueue.loadtest.processing.failure-rate:0.01}") double failureRate,
+                              @Value("${jobqueue.loadtest.processing.batch-size:1}") int batchSize) {
+
+        this.recorder = recorder;
+        this.processingTime = ProcessingTime.valueOf(distribution.trim().toUpperCase(Locale.ROOT));
+        this.meanProcessingMs = meanProcessingMs;
+        this.failureRate = failureRate;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public String jobType() {
+        return JOB_TYPE;
+    }
+
+    @Override
+    public int maxBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public List<JobResult> handle(List<JobNg> jobs) throws InterruptedException {
+        Instant startedAt = Instant.now();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        // One sampled call per batch, like a handler writing the whole batch to a store at once
+        TimeUnit.MICROSECONDS.sleep(processingTime.sampleMicros(meanProcessingMs, random));
+        Instant finishedAt = Instant.now();
+
+        List<JobResult> results = new ArrayList<>(jobs.size());
+        for (JobNg job : jobs) {
+            boolean succeeded = random.nextDouble() >= failureRate;
+            recorder.recordProcessed(job, startedAt, finishedAt, succeeded);
+            results.add(succeeded ? JobResult.success(job.id()) : JobResult.failure(job.id(), "Simulated load test failure"));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,130 @@
+package io.knav.pgjobqueue.advancedscheduler.loadtest;
+
+import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
+import io.knav.pgjobqueue.advancedscheduler.services.ClaimListener;
+import io.knav.pgjobqueue.advancedscheduler.services.ClaimPath;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Collects per-job timestamps of load test jobs and turns them into latency percentiles.
+
+Enqueue time is job_queue.enqueued_at, stamped by the database, so jobs produced on another node are
+measured too; start and end are taken on the worker around the handler call. Queue wait and total latency
+therefore assume the worker and database clocks agree, which holds for the docker-compose setup and
+within NTP accuracy elsewhere.
+
+The claim path comes from the engine through ClaimListener and is kept only until the job finishes.
+ */
+@Component
+@ConditionalOnProperty(name = "jobqueue.loadtest.enabled", havingValue = "true")
+public class LoadTestRecorder implements ClaimListener {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadTestRecorder.class);
+
+    private final Map<UUID, ClaimPath> claimPaths = new ConcurrentHashMap<>();
+    private final Map<ClaimPath, LatencyHistogram> queueWait = new EnumMap<>(ClaimPath.class);
+    private final Map<ClaimPath, LatencyHistogram> totalLatency = new EnumMap<>(ClaimPath.class);
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong firstEventNanos = new AtomicLong(Long.MIN_VALUE);
+
+    public LoadTestRecorder() {
+        for (ClaimPath path : ClaimPath.values()) {
+            queueWait.put(path, new LatencyHistogram());
+            totalLatency.put(path, new LatencyHistogram());
+        }
+    }
+
+    @Override
+    public void onClaimed(List<JobNg> jobs, ClaimPath path) {
+        markStarted();
+        for (JobNg job : jobs) {
+            if (LoadTestJobHandler.JOB_TYPE.equals(job.jobType())) {
+                claimPaths.put(job.id(), path);
+            }
+        }
+    }
+
+    void recordEnqueued(int count) {
+        markStarted();
+        enqueued.addAndGet(count);
+    }
+
+    void recordProcessed(JobNg job, Instant startedAt, Instant finishedAt, boolean succeeded) {
+        ClaimPath path = claimPaths.remove(job.id());
+        if (path == null) {
+            path = ClaimPath.POLL;
+        }
+        if (job.enqueuedAt() != null) {
+            queueWait.get(path).record(Duration.between(job.enqueuedAt(), startedAt).toNanos() / 1_000);
+            totalLatency.get(path).record(Duration.between(job.enqueuedAt(), finishedAt).toNanos() / 1_000);
+        }
+        completed.incrementAndGet();
+        if (!succeeded) {
+            failed.incrementAndGet();
+        }
+    }
+
+    long processed() {
+        return completed.get();
+    }
+
+    public LoadTestReport report() {
+        long first = firstEventNanos.get();
+        double elapsedSeconds = first == Long.MIN_VALUE ? 0 : (System.nanoTime() - first) / 1e9;
+        long done = completed.get();
+        Map<ClaimPath, LoadTestReport.PathLatency> paths = new EnumMap<>(ClaimPath.class);
+        for (ClaimPath path : ClaimPath.values()) {
+            LatencyHistogram total = totalLatency.get(path);
+            paths.put(path, new LoadTestReport.PathLatency(total.count(), percentiles(queueWait.get(path)), percentiles(total)));
+        }
+        return new LoadTestReport(enqueued.get(), done, failed.get(), elapsedSeconds,
+                elapsedSeconds == 0 ? 0 : done / elapsedSeconds, paths);
+    }
+
+    @Scheduled(fixedDelayString = "${jobqueue.loadtest.report-interval-ms:10000}")
+    public void logReport() {
+        if (firstEventNanos.get() != Long.MIN_VALUE) {
+            log.info(format(report()));
+        }
+    }
+
+    static String format(LoadTestReport report) {
+        StringBuilder line = new StringBuilder(String.format(
+                "Load test: enqueued=%d completed=%d failed=%d elapsed=%.1fs throughput=%.1f jobs/s",
+                report.enqueued(), report.completed(), report.failed(), report.elapsedSeconds(), report.completedPerSecond()));
+        report.paths().forEach((path, latency) -> {
+            if (latency.jobs() > 0) {
+                line.append(String.format(
+                        "%n  %-12s jobs=%d queue-wait p50/p99/p999=%.1f/%.1f/%.1f ms total p50/p99/p999=%.1f/%.1f/%.1f ms",
+                        path, latency.jobs(),
+                        latency.queueWaitMs().p50(), latency.queueWaitMs().p99(), latency.queueWaitMs().p999(),
+                        latency.totalMs().p50(), latency.totalMs().p99(), latency.totalMs().p999()));
+            }
+        });
+        return line.toString();
+    }
+
+    private void markStarted() {
+        firstEventNanos.compareAndSet(Long.MIN_VALUE, System.nanoTime());
+    }
+
+    private static LoadTestReport.Percentiles percentiles(LatencyHistogram histogram) {
+        return new LoadTestReport.Percentiles(histogram.percentile(50) / 1000.0, histogram.percentile(99) / 1000.0,
+                histogram.percentile(99.9) / 1000.0);
+    }
+}
@@ -0,0 +1,28 @@
+package io.knav.pgjobqueue.advancedscheduler.loadtest;
+
+import io.knav.pgjobqueue.advancedscheduler.services.ClaimPath;
+
+import java.util.Map;
+
+/**
+ * Latencies of the load test jobs processed on this node, split by the path that claimed them.
+ *
+ * @param enqueued          jobs the producer on this node has enqueued
+ * @param completed         jobs processed on this node, including failed ones
+ * @param failed            jobs whose simulated processing failed
+ * @param elapsedSeconds    since the first job was enqueued or claimed on this node
+ * @param completedPerSecond throughput over {@code elapsedSeconds}
+ */
+public record LoadTestReport(long enqueued, long completed, long failed, double elapsedSeconds, double completedPerSecond,
+                             Map<ClaimPath, PathLatency> paths) {
+
+    /**
+     * @param queueWaitMs enqueue to processing start
+     * @param totalMs     enqueue to processing end
+     */
+    public record PathLatency(long jobs, Percentiles queueWaitMs, Percentiles totalMs) {
+    }
+
+    public record Percentiles(double p50, double p99, double p999) {
+    }
+}
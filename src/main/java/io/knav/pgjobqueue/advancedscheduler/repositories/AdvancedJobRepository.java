@@ -1,30 +1,242 @@
 package io.knav.pgjobqueue.advancedscheduler.repositories;
 
 
+import io.knav.pgjobqueue.advancedscheduler.codec.PayloadCodec;
+import io.knav.pgjobqueue.advancedscheduler.entities.JobEvent;
 import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
-import io.knav.pgjobqueue.advancedscheduler.entities.Metadata;
+import io.knav.pgjobqueue.advancedscheduler.entities.RetryPolicy;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 @Service
 public class AdvancedJobRepository {
 
+    private static final Logger log = LoggerFactory.getLogger(AdvancedJobRepository.class);
+
+    private static final int DEFAULT_BATCH_SIZE = 5;
+
+    /**
+     * Key space of the job_queue jobs in job_idempotency_keys.
+     */
+    public static final String IDEMPOTENCY_SCOPE = "job_queue";
+
     private final JdbcTemplate jdbcTemplate;
+    private final ClaimStrategy claimStrategy;
+    private final PayloadCodec payloadCodec;
+    private final JobNgRowMapper rowMapper;
+    private final boolean copyEnqueue;
+    private final Map<String, Timer> claimLatency = new LinkedHashMap<>();
+    private final Map<String, DistributionSummary> claimBatchSize = new LinkedHashMap<>();
+    private final Counter claimSkipped;
+    private final AsyncJobRepository asyncRepository;
 
+    /**
+     * @param enqueueMode how {@link #addJobs(List)} writes a batch: {@code copy} streams it through COPY,
+     *                    {@code insert} sends one multi-row INSERT built from arrays
+     */
     @Autowired
-    public AdvancedJobRepository(JdbcTemplate jdbcTemplate) {
+    public AdvancedJobRepository(JdbcTemplate jdbcTemplate,
+                                 ClaimStrategy claimStrategy,
+                                 PayloadCodec payloadCodec,
+                                 MeterRegistry meterRegistry,
+                                 Optional<AsyncJobRepository> asyncRepository,
+                                 @Value("${jobqueue.enqueue.mode:copy}") String enqueueMode) {
 
         this.jdbcTemplate = jdbcTemplate;
+        this.claimStrategy = claimStrategy;
+        this.payloadCodec = payloadCodec;
+        this.rowMapper = new JobNgRowMapper(payloadCodec);
+        this.copyEnqueue = !"insert".equalsIgnoreCase(enqueueMode);
+        this.asyncRepository = asyncRepository.orElse(null);
+        for (String target : List.of("queue", "buckets", "ids")) {
+            claimLatency.put(target, Timer.builder("jobqueue.claim.latency")
+                    .description("Duration of one claim transaction")
+                    .tag("target", target)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+            claimBatchSize.put(target, DistributionSummary.builder("jobqueue.claim.batch.size")
+                    .description("Jobs returned by one claim")
+                    .tag("target", target)
+                    .baseUnit("jobs")
+                    .register(meterRegistry));
+        }
+        this.claimSkipped = Counter.builder("jobqueue.claim.skipped")
+                .description("Notified jobs a claim by id did not get, because another worker held or had already taken them")
+                .baseUnit("jobs")
+                .register(meterRegistry);
     }
 
     public void addJob(JobNg job) {
-        jdbcTemplate.update("INSERT INTO job_queue_view (id, metadata, curr_job_status) VALUES (?,?::json,?)", job.id(), job.metadata().asJson(), "archive_pending");
+        jdbcTemplate.update("INSERT INTO job_queue_view (id, metadata, curr_job_status, priority, run_at, queue_name, job_type) VALUES (?,?::jsonb,?,?,?::timestamptz,?,?)",
+                job.id(), payloadCodec.encode(job.metadata()), "archive_pending", job.priority(),
+                job.runAt() == null ? null : Timestamp.from(job.runAt()), job.queueName(), job.jobType());
+    }
+
+    /**
+     * Enqueues the job unless another job already holds {@code idempotencyKey}. Key, payload and state are written
+     * by one statement: the key insert yields no row on a conflict, and then neither do the job inserts.
+     *
+     * @return true if the job was enqueued, false if the key was taken
+     */
+    public boolean addJobIfAbsent(JobNg job, String idempotencyKey) {
+        List<UUID> inserted = jdbcTemplate.queryForList("""
+                WITH key AS (
+                    INSERT INTO job_idempotency_keys (scope, idempotency_key, job_id) VALUES (?, ?, ?)
+                    ON CONFLICT (scope, idempotency_key) DO NOTHING
+                    RETURNING job_id
+                ), payload AS (
+                    INSERT INTO job_payload (id, metadata, job_type) SELECT job_id, ?::jsonb, ? FROM key
+                )
+                INSERT INTO job_queue (id, priority, run_at, queue_name)
+                SELECT job_id, ?, COALESCE(?::timestamptz, NOW()), ? FROM key
+                RETURNING id
+                """, UUID.class,
+                IDEMPOTENCY_SCOPE, idempotencyKey, job.id(), payloadCodec.encode(job.metadata()), job.jobType(),
+                job.priority(), job.runAt() == null ? null : Timestamp.from(job.runAt()), job.queueName());
+        return !inserted.isEmpty();
+    }
+
+    /**
+     * @param scope the key space, the IDEMPOTENCY_SCOPE of the repository that wrote the job
+     * @return the job that holds the idempotency key, null if no job does
+     */
+    public UUID findJobIdByIdempotencyKey(String scope, String idempotencyKey) {
+        List<UUID> jobIds = jdbcTemplate.queryForList(
+                "SELECT job_id FROM job_idempotency_keys WHERE scope = ? AND idempotency_key = ?", UUID.class,
+                scope, idempotencyKey);
+        return jobIds.isEmpty() ? null : jobIds.get(0);
+    }
+
+    /**
+     * Forgets the idempotency keys older than {@code retentionSeconds}; their keys can be used again.
+     *
+     * @return the number of keys deleted
+     */
+    public int deleteExpiredIdempotencyKeys(long retentionSeconds) {
+        return jdbcTemplate.update("DELETE FROM job_idempotency_keys WHERE created_at < NOW() - make_interval(secs => ?)",
+                retentionSeconds);
+    }
+
+    /**
+     * Enqueues a batch of jobs: payloads go to job_payload, state rows to job_queue, both in one transaction.
+     * Jobs without a run_at are due immediately.
+     */
+    @Transactional
+    public void addJobs(List<JobNg> jobs) {
+        if (jobs.isEmpty()) {
+            return;
+        }
+        if (copyEnqueue) {
+            copyJobs(jobs);
+        } else {
+            insertJobs(jobs);
+        }
+    }
+
+    static final String INSERT_STATES_SQL = """
+            INSERT INTO job_queue (id, priority, run_at, queue_name)
+            SELECT id, priority, COALESCE(run_at, NOW()), COALESCE(queue_name, 'default')
+            FROM unnest(?::uuid[], ?::smallint[], ?::timestamptz[], ?::text[]) AS s(id, priority, run_at, queue_name)
+            """;
+
+    // Payloads and states in one statement, so a batch is a single round trip even without an explicit transaction
+    static final String INSERT_JOBS_SQL =
+            "WITH payload AS (INSERT INTO job_payload (id, metadata, job_type) SELECT * FROM unnest(?::uuid[], ?::jsonb[], ?::text[])) "
+            + INSERT_STATES_SQL;
+
+    private void insertJobs(List<JobNg> jobs) {
+        String[] metadata = new String[jobs.size()];
+        String[] jobTypes = new String[jobs.size()];
+        for (int i = 0; i < jobs.size(); i++) {
+            metadata[i] = payloadCodec.encode(jobs.get(i).metadata());
+            jobTypes[i] = jobs.get(i).jobType();
+        }
+        Object[] states = stateArrays(jobs);
+        jdbcTemplate.update(INSERT_JOBS_SQL, states[0], metadata, jobTypes, states[0], states[1], states[2], states[3]);
+    }
+
+    private void copyJobs(List<JobNg> jobs) {
+        StringBuilder csv = new StringBuilder(jobs.size() * 80);
+        for (JobNg job : jobs) {
+            csv.append(job.id()).append(',');
+            appendCsvQuoted(csv, payloadCodec.encode(job.metadata()));
+            csv.append(',');
+            appendCsvQuoted(csv, job.jobType());
+            csv.append('\n');
+        }
+        jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            try {
+                return connection.unwrap(PGConnection.class).getCopyAPI()
+                        .copyIn("COPY job_payload (id, metadata, job_type) FROM STDIN WITH (FORMAT csv)", new StringReader(csv.toString()));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error copying jobs into job_payload", e);
+            }
+        });
+        jdbcTemplate.update(INSERT_STATES_SQL, stateArrays(jobs));
+    }
+
+    // ids, priorities, run_at values (ISO-8601 text, null for now) and queue names as parallel arrays for unnest
+    static Object[] stateArrays(List<JobNg> jobs) {
+        UUID[] ids = new UUID[jobs.size()];
+        Integer[] priorities = new Integer[jobs.size()];
+        String[] runAts = new String[jobs.size()];
+        String[] queueNames = new String[jobs.size()];
+        for (int i = 0; i < jobs.size(); i++) {
+            JobNg job = jobs.get(i);
+            ids[i] = job.id();
+            priorities[i] = job.priority();
+            runAts[i] = job.runAt() == null ? null : job.runAt().toString();
+            queueNames[i] = job.queueName();
+        }
+        return new Object[]{ids, priorities, runAts, queueNames};
+    }
+
+    private static void appendCsvQuoted(StringBuilder csv, String value) {
+        csv.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                csv.append('"');
+            }
+            csv.append(c);
+        }
+        csv.append('"');
+    }
+
+    /**
+     * @return the job as stored, null if it is not in job_queue
+     */
+    public JobNg findJob(UUID id) {
+        List<JobNg> jobs = jdbcTemplate.query("SELECT * FROM job_queue_view WHERE id = ?", rowMapper, id);
+        return jobs.isEmpty() ? null : jobs.get(0);
     }
 
     public JobNg fetchAndLockJobForProcessing(UUID id) {
@@ -32,56 +244,75 @@ public class AdvancedJobRepository {
 
             List<JobNg> jobs = jdbcTemplate.query(
                     "SELECT * FROM job_queue_view WHERE id = ? FOR UPDATE SKIP LOCKED",
-                    new Object[]{id},
-                    (rs, rowNum) -> {
-                        UUID jobId = rs.getObject("id", UUID.class);
-                        Metadata metadata = Metadata.fromJson(rs.getString("metadata"));
-                        String jobStatus = rs.getString("curr_job_status");
-                        return new JobNg(jobId, metadata, jobStatus);
-                    });
+                    rowMapper, id);
 
             return jobs.isEmpty() ? null : jobs.get(0);
         } catch (DataAccessException dae) {
             // Handle data access exceptions (such as SQL errors)
-            System.err.println("Data Access Error fetching job by ID: " + dae.getMessage());
+            log.error("Data Access Error fetching job by ID: {}", dae.getMessage());
         } catch (Exception e) {
             // Handle other exceptions (such as JSON parsing errors)
-            System.err.println("Error fetching job by ID: " + e.getMessage());
+            log.error("Error fetching job by ID: {}", e.getMessage());
         }
         return null;
     }
 
-    @Transactional
     public List<JobNg> fetchJobs() {
-        // Lock and select jobs
-        List<JobNg> jobs = jdbcTemplate.query(
-                "SELECT id, metadata, curr_job_status FROM job_queue_view WHERE curr_job_status = ? FOR UPDATE SKIP LOCKED LIMIT ?",
-                (rs, rowNum) -> {
-                    UUID id = rs.getObject("id", UUID.class);
-                    try {
-                        String metadataJson = rs.getString("metadata");
-                        var metadata = Metadata.fromJson(metadataJson);
-                        String currentJobStatus = rs.getString("curr_job_status");
-                        return new JobNg(id, metadata, currentJobStatus);
-                    } catch (Exception e) {
-                        // Log or handle the exception as needed
-                        throw new RuntimeException("Error reading metadata for job: " + id, e);
-                    }
-                },
-                "archive_pending", 5
-        );
-
-        // Get IDs from the fetched jobs
-        List<UUID> jobIds = jobs.stream().map(JobNg::id).toList();
-
-        // Update statuses if jobs are found
-        if (!jobIds.isEmpty()) {
-            jdbcTemplate.update(
-                    "UPDATE job_queue_view SET curr_job_status = ? WHERE id = ANY(?)",
-                    "archive_processing", jobIds.toArray(UUID[]::new)
-            );
-        }
+        return fetchJobs(JobNg.DEFAULT_QUEUE, DEFAULT_BATCH_SIZE);
+    }
+
+    // With the async repository the claim goes over the jasync pool; the claim loop and the dispatcher are
+    // single threads, so waiting for it here costs them nothing and keeps the claims off the JDBC pool
+    public List<JobNg> fetchJobs(String queueName, int limit) {
+        return timedClaim("queue", () -> asyncRepository != null
+                ? asyncRepository.claim(queueName, limit).join()
+                : claimStrategy.claim(queueName, limit));
+    }
+
+    public List<JobNg> fetchJobs(String queueName, int[] buckets, int limit) {
+        return timedClaim("buckets", () -> asyncRepository != null
+                ? asyncRepository.claim(queueName, buckets, limit).join()
+                : claimStrategy.claim(queueName, buckets, limit));
+    }
+
+    /**
+     * Lists the queues that have pending jobs. Walks idx_job_queue_claimable with one index probe per queue
+     * (a loose index scan) instead of reading every pending row, so it stays cheap behind a large backlog.
+     */
+    public List<String> findActiveQueues() {
+        return jdbcTemplate.queryForList("""
+                WITH RECURSIVE queues AS (
+                    (SELECT queue_name FROM job_queue
+                     WHERE curr_job_status = 'archive_pending'
+                     ORDER BY queue_name LIMIT 1)
+                    UNION ALL
+                    SELECT (SELECT j.queue_name FROM job_queue j
+                            WHERE j.curr_job_status = 'archive_pending' AND j.queue_name > queues.queue_name
+                            ORDER BY j.queue_name LIMIT 1)
+                    FROM queues
+                    WHERE queues.queue_name IS NOT NULL
+                )
+                SELECT queue_name FROM queues WHERE queue_name IS NOT NULL
+                """, String.class);
+    }
 
+    /**
+     * Claims whichever of the given jobs are still pending and not locked by another worker,
+     * in one batched claim instead of one round trip per id.
+     */
+    public List<JobNg> fetchAndLockJobsForProcessing(Collection<UUID> ids, int limit) {
+        List<JobNg> jobs = timedClaim("ids", () -> asyncRepository != null
+                ? asyncRepository.claim(ids, limit).join()
+                : claimStrategy.claim(ids, limit));
+        claimSkipped.increment(Math.min(ids.size(), limit) - jobs.size());
+        return jobs;
+    }
+
+    private List<JobNg> timedClaim(String target, Supplier<List<JobNg>> claim) {
+        long start = System.nanoTime();
+        List<JobNg> jobs = claim.get();
+        claimLatency.get(target).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        claimBatchSize.get(target).record(jobs.size());
         return jobs;
     }
 
@@ -92,5 +323,315 @@ public class AdvancedJobRepository {
                     status, id);
     }
 
+    // Follow-ups are only written for parents this statement completed, so a parent whose lease was lost and
+    // that another worker now runs again does not start its next stage twice
+    static final String COMPLETE_AND_CHAIN_SQL = """
+            WITH done AS (
+                UPDATE job_queue
+                SET prev_job_status = curr_job_status, curr_job_status = 'archive_completed'
+                WHERE id = ANY(?::uuid[]) AND curr_job_status = 'archive_processing'
+                RETURNING id
+            ), next AS (
+                SELECT n.*
+                FROM unnest(?::uuid[], ?::uuid[], ?::jsonb[], ?::text[], ?::smallint[], ?::timestamptz[], ?::text[], ?::text[])
+                    AS n(parent_id, id, metadata, job_type, priority, run_at, queue_name, status)
+                JOIN done ON done.id = n.parent_id
+            ), payload AS (
+                INSERT INTO job_payload (id, metadata, job_type) SELECT id, metadata, job_type FROM next
+            )
+            INSERT INTO job_queue (id, curr_job_status, priority, run_at, queue_name, lease_expire, attempts)
+            SELECT id, status, priority, COALESCE(run_at, NOW()), COALESCE(queue_name, 'default'),
+                   CASE WHEN status = 'archive_processing' THEN NOW() + make_interval(secs => ?) END,
+                   CASE WHEN status = 'archive_processing' THEN 1 ELSE 0 END
+            FROM next
+            RETURNING id, enqueued_at, curr_job_status
+            """;
+
+    /**
+     * Completes the given jobs and enqueues their follow-up jobs in one statement. Up to {@code localSlots}
+     * follow-ups that are due now are inserted straight into archive_processing with a lease, claimed by this
+     * node without a notification or a claim query; the rest are inserted pending and announced as usual.
+     *
+     * @param followUps follow-up jobs by the id of the job they follow
+     * @return the follow-ups claimed for this node, in the order given
+     */
+    public List<JobNg> completeAndChain(Map<UUID, List<JobNg>> followUps, int localSlots, long leaseSeconds) {
+        List<UUID> parents = new ArrayList<>(followUps.keySet());
+        List<UUID> parentIds = new ArrayList<>();
+        List<JobNg> jobs = new ArrayList<>();
+        followUps.forEach((parentId, next) -> next.forEach(job -> {
+            parentIds.add(parentId);
+            jobs.add(job);
+        }));
+
+        Object[] states = stateArrays(jobs);
+        String[] metadata = new String[jobs.size()];
+        String[] jobTypes = new String[jobs.size()];
+        String[] statuses = new String[jobs.size()];
+        int claimable = localSlots;
+        for (int i = 0; i < jobs.size(); i++) {
+            JobNg job = jobs.get(i);
+            metadata[i] = payloadCodec.encode(job.metadata());
+            jobTypes[i] = job.jobType();
+            boolean local = claimable > 0 && (job.runAt() == null || !job.runAt().isAfter(Instant.now()));
+            statuses[i] = local ? "archive_processing" : "archive_pending";
+            if (local) {
+                claimable--;
+            }
+        }
 
+        // Keyed in the given order; only the rows the statement returned as processing get a value
+        Map<UUID, JobNg> claimed = new LinkedHashMap<>();
+        Map<UUID, JobNg> byId = new LinkedHashMap<>();
+        jobs.forEach(job -> byId.put(job.id(), job));
+        jdbcTemplate.query(COMPLETE_AND_CHAIN_SQL, rs -> {
+            if ("archive_processing".equals(rs.getString("curr_job_status"))) {
+                JobNg job = byId.get(rs.getObject("id", UUID.class));
+                claimed.put(job.id(), new JobNg(job.id(), job.metadata(), "archive_processing", job.priority(), job.runAt(),
+                        job.queueName(), job.jobType(), rs.getTimestamp("enqueued_at").toInstant(), 1));
+            }
+        }, parents.toArray(UUID[]::new), parentIds.toArray(UUID[]::new), states[0], metadata, jobTypes,
+                states[1], states[2], states[3], statuses, leaseSeconds);
+        return byId.keySet().stream().map(claimed::get).filter(Objects::nonNull).toList();
+    }
+
+    /**
+     * Moves all given jobs that are still in {@code fromStatus} to {@code toStatus} with one array-based update.
+     * It writes job_queue directly instead of going through the view trigger; the job_transitions foreign key
+     * on (prev_job_status, curr_job_status) still rejects invalid transitions.
+     *
+     * @return the number of jobs updated
+     */
+    public int updateJobStatuses(Collection<UUID> ids, String fromStatus, String toStatus) {
+        return jdbcTemplate.update(
+                "UPDATE job_queue SET prev_job_status = curr_job_status, curr_job_status = ? WHERE id = ANY(?) AND curr_job_status = ?",
+                toStatus, ids.toArray(UUID[]::new), fromStatus);
+    }
+
+    /**
+     * Hands jobs this node claimed but will not finish back to the queue, due right away. Jobs whose handler never
+     * started get their attempt back; the statement's wake-up notification sends the other nodes claiming.
+     *
+     * @param unstarted the subset of {@code ids} that was never handed to a handler
+     * @return the number of jobs released
+     */
+    public int releaseJobs(Collection<UUID> ids, Collection<UUID> unstarted) {
+        return jdbcTemplate.update("""
+                UPDATE job_queue
+                SET prev_job_status = curr_job_status,
+                    curr_job_status = 'archive_pending',
+                    lease_expire = NULL,
+                    attempts = CASE WHEN id = ANY(?) THEN GREATEST(attempts - 1, 0) ELSE attempts END
+                WHERE id = ANY(?) AND curr_job_status = 'archive_processing'
+                """, unstarted.toArray(UUID[]::new), ids.toArray(UUID[]::new));
+    }
+
+    // Failed jobs go straight back to pending; the new run_at keeps them out of claims until their backoff is over
+    static final String RETRY_JOBS_SQL = """
+            UPDATE job_queue q
+            SET prev_job_status = q.curr_job_status,
+                curr_job_status = 'archive_pending',
+                run_at = r.run_at,
+                lease_expire = NULL
+            FROM unnest(?::uuid[], ?::timestamptz[]) AS r(id, run_at)
+            WHERE q.id = r.id AND q.curr_job_status = 'archive_processing'
+            """;
+
+    /**
+     * Hands failed jobs that still have attempts left back to the queue, each due at its own {@code runAt}.
+     *
+     * @return the number of jobs rescheduled
+     */
+    public int retryJobs(List<UUID> ids, List<Instant> runAts) {
+        return jdbcTemplate.update(RETRY_JOBS_SQL, ids.toArray(UUID[]::new),
+                runAts.stream().map(Instant::toString).toArray(String[]::new));
+    }
+
+    /**
+     * Deals with up to {@code limit} jobs whose lease has expired, oldest lease first. A job whose worker died
+     * used up its attempt like a failed one: it is dead-lettered once its job type's policy is exhausted and
+     * otherwise released to archive_pending after the policy's backoff. The backoff is the one of
+     * {@link RetryPolicy#backoff(int)}, computed in SQL. The expired leases are found through the partial
+     * archive_processing index; lease_expire itself is not indexed, so that lease heartbeats stay HOT updates.
+     *
+     * @param overrides policies of the job types that do not use {@code defaults}
+     * @return the number of jobs released or dead-lettered
+     */
+    public int releaseExpiredLeases(int limit, RetryPolicy defaults, Map<String, RetryPolicy> overrides) {
+        String[] jobTypes = overrides.keySet().toArray(String[]::new);
+        Integer[] maxAttempts = new Integer[jobTypes.length];
+        Long[] initialBackoffMs = new Long[jobTypes.length];
+        Long[] maxBackoffMs = new Long[jobTypes.length];
+        for (int i = 0; i < jobTypes.length; i++) {
+            RetryPolicy policy = overrides.get(jobTypes[i]);
+            maxAttempts[i] = policy.maxAttempts();
+            initialBackoffMs[i] = policy.initialBackoff().toMillis();
+            maxBackoffMs[i] = policy.maxBackoff().toMillis();
+        }
+        return jdbcTemplate.update("""
+                UPDATE job_queue q
+                SET prev_job_status = q.curr_job_status,
+                    curr_job_status = CASE WHEN q.attempts >= e.max_attempts THEN 'archive_dead' ELSE 'archive_pending' END,
+                    run_at = CASE
+                                 WHEN q.attempts >= e.max_attempts THEN q.run_at
+                                 ELSE NOW() + make_interval(secs => least(e.max_backoff_ms, e.initial_backoff_ms * 2 ^ least(greatest(q.attempts - 1, 0), 30))
+                                                                    * (0.5 + random() / 2) / 1000)
+                        END,
+                    lease_expire = NULL
+                FROM (
+                    SELECT x.id, x.enqueued_at,
+                           COALESCE(t.max_attempts, ?) AS max_attempts,
+                           COALESCE(t.initial_backoff_ms, ?) AS initial_backoff_ms,
+                           COALESCE(t.max_backoff_ms, ?) AS max_backoff_ms
+                    FROM (
+                        SELECT id, enqueued_at FROM job_queue
+                        WHERE curr_job_status = 'archive_processing' AND lease_expire < NOW()
+                        ORDER BY lease_expire
+                        LIMIT ?
+                        FOR UPDATE SKIP LOCKED
+                    ) x
+                    JOIN job_payload p ON p.id = x.id AND p.enqueued_at = x.enqueued_at
+                    LEFT JOIN unnest(?::text[], ?::int[], ?::bigint[], ?::bigint[])
+                        AS t(job_type, max_attempts, initial_backoff_ms, max_backoff_ms) ON t.job_type = p.job_type
+                ) e
+                WHERE q.id = e.id AND q.enqueued_at = e.enqueued_at
+                """,
+                defaults.maxAttempts(), defaults.initialBackoff().toMillis(), defaults.maxBackoff().toMillis(), limit,
+                jobTypes, maxAttempts, initialBackoffMs, maxBackoffMs);
+    }
+
+    /**
+     * Pushes the lease of every given job that is still processing to {@code leaseSeconds} from now.
+     *
+     * @return the number of leases extended
+     */
+    public int extendLeases(Collection<UUID> ids, long leaseSeconds) {
+        return jdbcTemplate.update(
+                "UPDATE job_queue SET lease_expire = NOW() + make_interval(secs => ?) WHERE id = ANY(?) AND curr_job_status = ?",
+                leaseSeconds, ids.toArray(UUID[]::new), "archive_processing");
+    }
+
+    /**
+     * Creates the daily job_queue and job_payload partitions up to {@code daysAhead} days from today.
+     * Only valid with the partitioned layout.
+     *
+     * @return the number of job_queue partitions created
+     */
+    public int createPartitions(int daysAhead) {
+        return jdbcTemplate.queryForObject("SELECT create_job_queue_partitions(?)", Integer.class, daysAhead);
+    }
+
+    /**
+     * Detaches and drops the partitions that ended more than {@code retentionDays} ago and hold only terminal jobs.
+     * Only valid with the partitioned layout.
+     *
+     * @return the names of the dropped job_queue partitions
+     */
+    public List<String> dropExpiredPartitions(int retentionDays) {
+        return jdbcTemplate.queryForList("SELECT drop_expired_job_queue_partitions(make_interval(days => ?))",
+                String.class, retentionDays);
+    }
+
+    /**
+     * @return when the earliest delayed job becomes due, or null when no pending job is waiting for its run_at
+     */
+    public Instant nextRunAt() {
+        Timestamp next = jdbcTemplate.queryForObject(
+                "SELECT min(run_at) FROM job_queue WHERE curr_job_status = ? AND run_at > NOW()",
+                Timestamp.class, "archive_pending");
+        return next == null ? null : next.toInstant();
+    }
+
+    /**
+     * @return the current status of every given job that is still in job_queue
+     */
+    public List<JobEvent> findJobStatuses(Collection<UUID> ids) {
+        return jdbcTemplate.query("SELECT id, queue_name, curr_job_status FROM job_queue WHERE id = ANY(?)",
+                (rs, rowNum) -> new JobEvent(rs.getObject("id", UUID.class), rs.getString("queue_name"), rs.getString("curr_job_status")),
+                (Object) ids.toArray(UUID[]::new));
+    }
+
+    /**
+     * Counts pending and processing jobs exactly, but stops at {@code cap} per status. Both statuses have a
+     * partial index, so the cost is bounded by the cap however large job_queue grows.
+     */
+    public Map<String, Long> countActiveJobs(int cap) {
+        return jdbcTemplate.query("""
+                SELECT 'archive_pending' AS status, count(*) AS jobs
+                FROM (SELECT 1 FROM job_queue WHERE curr_job_status = 'archive_pending' LIMIT ?) p
+                UNION ALL
+                SELECT 'archive_processing', count(*)
+                FROM (SELECT 1 FROM job_queue WHERE curr_job_status = 'archive_processing' LIMIT ?) r
+                """, rs -> {
+            Map<String, Long> counts = new LinkedHashMap<>();
+            while (rs.next()) {
+                counts.put(rs.getString("status"), rs.getLong("jobs"));
+            }
+            return counts;
+        }, cap, cap);
+    }
+
+    /**
+     * Estimates the number of jobs per status from the planner statistics that ANALYZE keeps, summed over the
+     * partitions in the partitioned layout. Reads no table rows, so it is cheap for the terminal statuses that
+     * hold most of job_queue and have no index. Only as fresh as the last (auto)analyze.
+     */
+    public Map<String, Long> estimateJobsByStatus() {
+        return jdbcTemplate.query("""
+                SELECT s.status, round(sum(greatest(c.reltuples, 0) * s.freq))::bigint AS jobs
+                FROM pg_class c
+                JOIN pg_namespace n ON n.oid = c.relnamespace
+                JOIN pg_stats st ON st.schemaname = n.nspname AND st.tablename = c.relname
+                                AND st.attname = 'curr_job_status' AND NOT st.inherited
+                CROSS JOIN LATERAL unnest(st.most_common_vals::text::text[], st.most_common_freqs) AS s(status, freq)
+                WHERE c.oid = 'job_queue'::regclass
+                   OR c.oid IN (SELECT inhrelid FROM pg_inherits WHERE inhparent = 'job_queue'::regclass)
+                GROUP BY s.status
+                """, rs -> {
+            Map<String, Long> estimates = new LinkedHashMap<>();
+            while (rs.next()) {
+                estimates.put(rs.getString("status"), rs.getLong("jobs"));
+            }
+            return estimates;
+        });
+    }
+
+    /**
+     * Registers the worker in job_queue_workers or refreshes its heartbeat, and forgets workers whose heartbeat
+     * is older than {@code ttlSeconds}.
+     *
+     * @return ids of all live workers, sorted
+     */
+    @Transactional
+    public List<String> heartbeatWorker(String workerId, long ttlSeconds) {
+        jdbcTemplate.update("""
+                INSERT INTO job_queue_workers (worker_id, heartbeat_at) VALUES (?, NOW())
+                ON CONFLICT (worker_id) DO UPDATE SET heartbeat_at = EXCLUDED.heartbeat_at
+                """, workerId);
+        jdbcTemplate.update("DELETE FROM job_queue_workers WHERE heartbeat_at < NOW() - make_interval(secs => ?)", ttlSeconds);
+        return jdbcTemplate.queryForList("SELECT worker_id FROM job_queue_workers ORDER BY worker_id", String.class);
+    }
+
+    public void removeWorker(String workerId) {
+        jdbcTemplate.update("DELETE FROM job_queue_workers WHERE worker_id = ?", workerId);
+    }
+
+    /**
+     * Registers the node's interest in the status events of {@code queues} for {@code ttlSeconds}, or extends it,
+     * and forgets the expired registrations of every node. notify_job_status_events only publishes events of
+     * registered queues.
+     */
+    @Transactional
+    public void watchQueues(String nodeId, Collection<String> queues, long ttlSeconds) {
+        jdbcTemplate.update("""
+                INSERT INTO job_event_subscriptions (queue_name, node_id, expires_at)
+                SELECT queue_name, ?, NOW() + make_interval(secs => ?) FROM unnest(?::text[]) AS queue_name
+                ON CONFLICT (queue_name, node_id) DO UPDATE SET expires_at = EXCLUDED.expires_at
+                """, nodeId, ttlSeconds, queues.toArray(String[]::new));
+        jdbcTemplate.update("DELETE FROM job_event_subscriptions WHERE expires_at < NOW()");
+    }
+
+    public void unwatchQueues(String nodeId) {
+        jdbcTemplate.update("DELETE FROM job_event_subscriptions WHERE node_id = ?", nodeId);
+    }
 }
@@ -0,0 +1,136 @@
+package io.knav.pgjobqueue.advancedscheduler.repositories;
+
+import io.knav.pgjobqueue.advancedscheduler.codec.PayloadCodec;
+import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Claims without row locks on the candidate scan: it reads a window of pending ids, keeps the ones it can take a
+ * transaction-level advisory lock on, and updates those in the same statement. The advisory locks are released on
+ * commit, when the rows are already in archive_processing, and the status re-check in the outer WHERE drops rows
+ * another worker claimed in the meantime.
+ */
+@Component
+@ConditionalOnProperty(name = "jobqueue.claim.strategy", havingValue = "advisory-lock")
+public class AdvisoryLockClaimStrategy implements ClaimStrategy {
+
+    // First key of the two-key advisory lock space, keeps claim locks apart from other advisory locks
+    static final int CLAIM_LOCK_NAMESPACE = 7301;
+
+    private static final String CLAIM_SQL = """
+            UPDATE job_queue q
+            SET prev_job_status = q.curr_job_status,
+                curr_job_status = 'archive_processing',
+                lease_expire = NOW() + make_interval(secs => ?),
+                attempts = q.attempts + 1
+            FROM job_payload p
+            WHERE p.id = q.id AND p.enqueued_at = q.enqueued_at
+            AND q.id IN (
+                SELECT id FROM (
+                    SELECT id FROM job_queue
+                    WHERE queue_name = ? AND curr_job_status = 'archive_pending' AND run_at <= NOW()
+                    ORDER BY priority DESC, run_at
+                    LIMIT ?
+                ) candidates
+                WHERE pg_try_advisory_xact_lock(?, hashtext(id::text))
+                LIMIT ?
+            )
+            AND q.curr_job_status = 'archive_pending'
+            RETURNING q.id, p.metadata, q.curr_job_status, q.priority, q.run_at, q.queue_name, p.job_type, q.enqueued_at, q.attempts
+            """;
+
+    private static final String CLAIM_FROM_BUCKETS_SQL = """
+            UPDATE job_queue q
+            SET prev_job_status = q.curr_job_status,
+                curr_job_status = 'archive_processing',
+                lease_expire = NOW() + make_interval(secs => ?),
+                attempts = q.attempts + 1
+            FROM job_payload p
+            WHERE p.id = q.id AND p.enqueued_at = q.enqueued_at
+            AND q.id IN (
+                SELECT id FROM (
+                    SELECT c.id
+                    FROM unnest(?::int[]) AS b(bucket)
+                    CROSS JOIN LATERAL (
+                        SELECT id FROM job_queue
+                        WHERE queue_name = ? AND bucket = b.bucket AND curr_job_status = 'archive_pending' AND run_at <= NOW()
+                        ORDER BY priority DESC, run_at
+                        LIMIT ?
+                    ) c
+                    LIMIT ?
+                ) candidates
+                WHERE pg_try_advisory_xact_lock(?, hashtext(id::text))
+                LIMIT ?
+            )
+            AND q.curr_job_status = 'archive_pending'
+            RETURNING q.id, p.metadata, q.curr_job_status, q.priority, q.run_at, q.queue_name, p.job_type, q.enqueued_at, q.attempts
+            """;
+
+    private static final String CLAIM_BY_ID_SQL = """
+            UPDATE job_queue q
+            SET prev_job_status = q.curr_job_status,
+                curr_job_status = 'archive_processing',
+                lease_expire = NOW() + make_interval(secs => ?),
+                attempts = q.attempts + 1
+            FROM job_payload p
+            WHERE p.id = q.id AND p.enqueued_at = q.enqueued_at
+            AND q.id IN (
+                SELECT id FROM job_queue
+                WHERE id = ANY(?)
+                  AND curr_job_status = 'archive_pending'
+                  AND run_at <= NOW()
+                  AND pg_try_advisory_xact_lock(?, hashtext(id::text))
+                LIMIT ?
+            )
+            AND q.curr_job_status = 'archive_pending'
+            RETURNING q.id, p.metadata, q.curr_job_status, q.priority, q.run_at, q.queue_name, p.job_type, q.enqueued_at, q.attempts
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JobNgRowMapper rowMapper;
+    private final long leaseSeconds;
+    private final int candidateFactor;
+
+    /**
+     * @param candidateFactor how many candidate rows to scan per requested job, so that ids locked by other
+     *                        workers do not leave the claim short
+     */
+    @Autowired
+    public AdvisoryLockClaimStrategy(JdbcTemplate jdbcTemplate,
+                                     PayloadCodec payloadCodec,
+                                     @Value("${jobqueue.lease.duration-seconds:900}") long leaseSeconds,
+                                     @Value("${jobqueue.claim.advisory-candidate-factor:4}") int candidateFactor) {
+
+        this.jdbcTemplate = jdbcTemplate;
+        this.rowMapper = new JobNgRowMapper(payloadCodec);
+        this.leaseSeconds = leaseSeconds;
+        this.candidateFactor = candidateFactor;
+    }
+
+    @Override
+    public List<JobNg> claim(String queueName, int limit) {
+        return jdbcTemplate.query(CLAIM_SQL, rowMapper,
+                leaseSeconds, queueName, limit * candidateFactor, CLAIM_LOCK_NAMESPACE, limit);
+    }
+
+    @Override
+    public List<JobNg> claim(String queueName, int[] buckets, int limit) {
+        int candidates = limit * candidateFactor;
+        return jdbcTemplate.query(CLAIM_FROM_BUCKETS_SQL, rowMapper,
+                leaseSeconds, buckets, queueName, candidates, candidates, CLAIM_LOCK_NAMESPACE, limit);
+    }
+
+    @Override
+    public List<JobNg> claim(Collection<UUID> ids, int limit) {
+        return jdbcTemplate.query(CLAIM_BY_ID_SQL, rowMapper,
+                leaseSeconds, ids.toArray(UUID[]::new), CLAIM_LOCK_NAMESPACE, limit);
+    }
+}
@@ -0,0 +1,168 @@
+package io.knav.pgjobqueue.advancedscheduler.repositories;
+
+import com.github.jasync.sql.db.Configuration;
+import com.github.jasync.sql.db.ConnectionPoolConfigurationBuilder;
+import com.github.jasync.sql.db.QueryResult;
+import com.github.jasync.sql.db.RowData;
+import com.github.jasync.sql.db.pool.ConnectionPool;
+import com.github.jasync.sql.db.postgresql.PostgreSQLConnection;
+import com.github.jasync.sql.db.postgresql.PostgreSQLConnectionBuilder;
+import com.github.jasync.sql.db.postgresql.exceptions.GenericDatabaseException;
+import com.github.jasync.sql.db.postgresql.util.URLParser;
+import io.knav.pgjobqueue.advancedscheduler.codec.PayloadCodec;
+import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.IntStream;
+
+/*
+Non-blocking counterpart of AdvancedJobRepository for the hot operations, on a jasync ConnectionPool.
+
+Every method sends a single statement and returns right away; the future completes on the jasync event loop,
+so callers must not block in their callbacks. A handful of connections serve any number of concurrent callers:
+the pool hands each statement to a free connection and queues the rest (up to max-pending-queries) instead of
+parking a thread per statement. jasync does not pipeline on one connection, so every operation is shaped into
+one round trip: enqueue writes payloads and states in one statement, claims are UPDATE ... RETURNING like the
+update-returning strategy, whatever jobqueue.claim.strategy says.
+
+Active with jobqueue.repository.mode=async; the JDBC repository stays in place for everything else.
+ */
+@Service
+@ConditionalOnProperty(name = "jobqueue.repository.mode", havingValue = "async")
+public class AsyncJobRepository {
+
+    // SQLSTATE foreign_key_violation: job_transitions rejected the status change
+    private static final String FOREIGN_KEY_VIOLATION = "23503";
+
+    private final ConnectionPool<PostgreSQLConnection> pool;
+    private final PayloadCodec payloadCodec;
+    private final long leaseSeconds;
+
+    @Autowired
+    public AsyncJobRepository(@Value("${spring.datasource.url}") String url,
+                              @Value("${spring.datasource.username}") String username,
+                              @Value("${spring.datasource.password}") String password,
+                              @Value("${jobqueue.async.pool-size:8}") int poolSize,
+                              @Value("${jobqueue.async.max-pending-queries:1024}") int maxPendingQueries,
+                              @Value("${jobqueue.lease.duration-seconds:900}") long leaseSeconds,
+                              PayloadCodec payloadCodec) {
+
+        Configuration target = URLParser.INSTANCE.parseOrDie(url, StandardCharsets.UTF_8);
+        ConnectionPoolConfigurationBuilder config = new ConnectionPoolConfigurationBuilder();
+        config.setHost(target.getHost());
+        config.setPort(target.getPort());
+        config.setDatabase(target.getDatabase());
+        config.setUsername(username);
+        config.setPassword(password);
+        config.setMaxActiveConnections(poolSize);
+        config.setMaxPendingQueries(maxPendingQueries);
+        this.pool = PostgreSQLConnectionBuilder.createConnectionPool(config.build());
+        this.payloadCodec = payloadCodec;
+        this.leaseSeconds = leaseSeconds;
+    }
+
+    @PreDestroy
+    public void close() {
+        pool.disconnect().join();
+    }
+
+    /**
+     * Enqueues a batch of jobs, payloads and states in one statement and so in one implicit transaction.
+     */
+    public CompletableFuture<Void> addJobs(List<JobNg> jobs) {
+        if (jobs.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<String> metadata = jobs.stream().map(job -> payloadCodec.encode(job.metadata())).toList();
+        List<String> jobTypes = jobs.stream().map(JobNg::jobType).toList();
+        Object[] states = AdvancedJobRepository.stateArrays(jobs);
+        List<Object> ids = Arrays.asList((Object[]) states[0]);
+        return pool.sendPreparedStatement(AdvancedJobRepository.INSERT_JOBS_SQL, List.of(
+                        ids, metadata, jobTypes, ids,
+                        Arrays.asList((Object[]) states[1]), Arrays.asList((Object[]) states[2]), Arrays.asList((Object[]) states[3])))
+                .thenApply(result -> null);
+    }
+
+    public CompletableFuture<List<JobNg>> claim(String queueName, int limit) {
+        return pool.sendPreparedStatement(UpdateReturningClaimStrategy.CLAIM_SQL, List.of(leaseSeconds, queueName, limit))
+                .thenApply(this::toJobs);
+    }
+
+    public CompletableFuture<List<JobNg>> claim(String queueName, int[] buckets, int limit) {
+        List<Integer> bucketList = IntStream.of(buckets).boxed().toList();
+        return pool.sendPreparedStatement(UpdateReturningClaimStrategy.CLAIM_FROM_BUCKETS_SQL,
+                        List.of(leaseSeconds, bucketList, queueName, limit, limit))
+                .thenApply(this::toJobs);
+    }
+
+    public CompletableFuture<List<JobNg>> claim(Collection<UUID> ids, int limit) {
+        return pool.sendPreparedStatement(UpdateReturningClaimStrategy.CLAIM_BY_ID_SQL,
+                        List.of(leaseSeconds, List.copyOf(ids), limit))
+                .thenApply(this::toJobs);
+    }
+
+    /**
+     * Same as {@link AdvancedJobRepository#updateJobStatuses(Collection, String, String)}: one array-based update,
+     * validated by the job_transitions foreign key; see {@link #isRejectedTransition(Throwable)}.
+     */
+    public CompletableFuture<Integer> updateJobStatuses(Collection<UUID> ids, String fromStatus, String toStatus) {
+        return pool.sendPreparedStatement(
+                        "UPDATE job_queue SET prev_job_status = curr_job_status, curr_job_status = ? WHERE id = ANY(?::uuid[]) AND curr_job_status = ?",
+                        List.of(toStatus, List.copyOf(ids), fromStatus))
+                .thenApply(result -> (int) result.getRowsAffected());
+    }
+
+    public CompletableFuture<Integer> retryJobs(List<UUID> ids, List<Instant> runAts) {
+        return pool.sendPreparedStatement(AdvancedJobRepository.RETRY_JOBS_SQL,
+                        List.of(List.copyOf(ids), runAts.stream().map(Instant::toString).toList()))
+                .thenApply(result -> (int) result.getRowsAffected());
+    }
+
+    public CompletableFuture<Integer> extendLeases(Collection<UUID> ids, long leaseSeconds) {
+        return pool.sendPreparedStatement(
+                        "UPDATE job_queue SET lease_expire = NOW() + make_interval(secs => ?) WHERE id = ANY(?::uuid[]) AND curr_job_status = ?",
+                        List.of(leaseSeconds, List.copyOf(ids), "archive_processing"))
+                .thenApply(result -> (int) result.getRowsAffected());
+    }
+
+    /**
+     * @return true if the failure of a status update came from job_transitions rejecting the transition,
+     * as opposed to the database being unreachable
+     */
+    public static boolean isRejectedTransition(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        return cause instanceof GenericDatabaseException databaseException
+                && databaseException.getErrorMessage() != null
+                && FOREIGN_KEY_VIOLATION.equals(databaseException.getErrorMessage().getFields().get('C'));
+    }
+
+    private List<JobNg> toJobs(QueryResult result) {
+        List<JobNg> jobs = new ArrayList<>(result.getRows().size());
+        for (RowData row : result.getRows()) {
+            jobs.add(new JobNg((UUID) row.get("id"), payloadCodec.decode(row.getString("metadata")),
+                    row.getString("curr_job_status"), ((Number) row.get("priority")).intValue(),
+                    toInstant(row.get("run_at")), row.getString("queue_name"), row.getString("job_type"),
+                    toInstant(row.get("enqueued_at")), ((Number) row.get("attempts")).intValue()));
+        }
+        return jobs;
+    }
+
+    // jasync decodes timestamptz columns to OffsetDateTime
+    private static Instant toInstant(Object value) {
+        return value == null ? null : ((OffsetDateTime) value).toInstant();
+    }
+}
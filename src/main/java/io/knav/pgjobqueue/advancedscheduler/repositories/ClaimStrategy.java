@@ -0,0 +1,36 @@
+package io.knav.pgjobqueue.advancedscheduler.repositories;
+
+import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * How a worker takes pending jobs off job_queue and moves them to archive_processing.
+ * Exactly one implementation is active, picked with {@code jobqueue.claim.strategy}:
+ * <ul>
+ *     <li>{@code two-step}: SELECT ... FOR UPDATE SKIP LOCKED on the view, then UPDATE through the view trigger</li>
+ *     <li>{@code update-returning}: a single UPDATE ... RETURNING straight on job_queue</li>
+ *     <li>{@code advisory-lock}: a single UPDATE ... RETURNING guarded by transaction-level advisory locks</li>
+ * </ul>
+ */
+public interface ClaimStrategy {
+
+    /**
+     * Claims up to {@code limit} pending jobs of {@code queueName} that no other worker holds.
+     */
+    List<JobNg> claim(String queueName, int limit);
+
+    /**
+     * Claims up to {@code limit} pending jobs of {@code queueName} from the given claim buckets, bucket by bucket
+     * in the given order and in priority order within each bucket.
+     */
+    List<JobNg> claim(String queueName, int[] buckets, int limit);
+
+    /**
+     * Claims up to {@code limit} of the given jobs, skipping the ones that are no longer pending or are held
+     * by another worker.
+     */
+    List<JobNg> claim(Collection<UUID> ids, int limit);
+}
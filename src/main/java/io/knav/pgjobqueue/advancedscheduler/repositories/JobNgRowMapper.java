@@ -0,0 +1,42 @@
+package io.knav.pgjobqueue.advancedscheduler.repositories;
+
+import io.knav.pgjobqueue.advancedscheduler.codec.PayloadCodec;
+import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
+import io.knav.pgjobqueue.advancedscheduler.entities.Metadata;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.UUID;
+
+/**
+ * Maps the columns every claim returns: id, metadata, curr_job_status, priority, run_at, queue_name, job_type, enqueued_at
+ * and attempts.
+ */
+class JobNgRowMapper implements RowMapper<JobNg> {
+
+    private final PayloadCodec payloadCodec;
+
+    JobNgRowMapper(PayloadCodec payloadCodec) {
+        this.payloadCodec = payloadCodec;
+    }
+
+    @Override
+    public JobNg mapRow(ResultSet rs, int rowNum) throws SQLException {
+        UUID id = rs.getObject("id", UUID.class);
+        try {
+            String metadataJson = rs.getString("metadata");
+            Metadata metadata = payloadCodec.decode(metadataJson);
+            String currentJobStatus = rs.getString("curr_job_status");
+            Timestamp runAt = rs.getTimestamp("run_at");
+            Timestamp enqueuedAt = rs.getTimestamp("enqueued_at");
+            return new JobNg(id, metadata, currentJobStatus, rs.getInt("priority"), runAt == null ? null : runAt.toInstant(),
+                    rs.getString("queue_name"), rs.getString("job_type"),
+                    enqueuedAt == null ? null : enqueuedAt.toInstant(), rs.getInt("attempts"));
+        } catch (Exception e) {
+            // Log or handle the exception as needed
+            throw new RuntimeException("Error reading metadata for job: " + id, e);
+        }
+    }
+}
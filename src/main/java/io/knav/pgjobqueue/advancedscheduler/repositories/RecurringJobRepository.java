@@ -0,0 +1,109 @@
+package io.knav.pgjobqueue.advancedscheduler.repositories;
+
+import io.knav.pgjobqueue.advancedscheduler.codec.PayloadCodec;
+import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
+import io.knav.pgjobqueue.advancedscheduler.entities.RecurringJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Fires the due rows of recurring_jobs. The jobs of a fire and the move of its next_fire_at are written in one
+ * transaction that holds the row lock, so a fire is enqueued exactly once even if two nodes briefly both think
+ * they are the leader.
+ */
+@Service
+public class RecurringJobRepository {
+
+    private static final Logger log = LoggerFactory.getLogger(RecurringJobRepository.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AdvancedJobRepository jobsRepository;
+    private final PayloadCodec payloadCodec;
+
+    @Autowired
+    public RecurringJobRepository(JdbcTemplate jdbcTemplate,
+                                  AdvancedJobRepository jobsRepository,
+                                  PayloadCodec payloadCodec) {
+
+        this.jdbcTemplate = jdbcTemplate;
+        this.jobsRepository = jobsRepository;
+        this.payloadCodec = payloadCodec;
+    }
+
+    /**
+     * Enqueues the due fires of up to {@code limit} definitions, at most {@code maxFiresPerJob} per definition.
+     * Definitions with an invalid cron expression are disabled.
+     *
+     * @return the number of jobs enqueued
+     */
+    @Transactional
+    public int fireDueJobs(int limit, int maxFiresPerJob) {
+        List<RecurringJob> due = jdbcTemplate.query("""
+                SELECT name, cron, job_type, queue_name, priority, metadata, next_fire_at, catch_up
+                FROM recurring_jobs
+                WHERE enabled AND next_fire_at <= NOW()
+                ORDER BY next_fire_at
+                LIMIT ?
+                FOR UPDATE SKIP LOCKED
+                """, (rs, rowNum) -> new RecurringJob(rs.getString("name"), rs.getString("cron"),
+                rs.getString("job_type"), rs.getString("queue_name"), rs.getInt("priority"),
+                payloadCodec.decode(rs.getString("metadata")), rs.getTimestamp("next_fire_at").toInstant(),
+                rs.getBoolean("catch_up")), limit);
+        if (due.isEmpty()) {
+            return 0;
+        }
+        // The transaction's NOW(), the same instant the rows were selected as due with
+        Instant now = jdbcTemplate.queryForObject("SELECT NOW()", Timestamp.class).toInstant();
+
+        List<JobNg> jobs = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<Instant> nextFireAts = new ArrayList<>();
+        for (RecurringJob recurringJob : due) {
+            RecurringJob.Fires fires;
+            try {
+                fires = recurringJob.dueFires(now, maxFiresPerJob);
+            } catch (IllegalArgumentException e) {
+                log.warn("Disabling recurring job {}, its cron expression '{}' is invalid: {}",
+                        recurringJob.name(), recurringJob.cron(), e.getMessage());
+                disable(recurringJob.name());
+                continue;
+            }
+            for (Instant fireTime : fires.fireTimes()) {
+                jobs.add(new JobNg(UUID.randomUUID(), recurringJob.metadata(), "archive_pending",
+                        recurringJob.priority(), fireTime, recurringJob.queueName(), recurringJob.jobType()));
+            }
+            if (fires.nextFireAt() == null) {
+                log.info("Recurring job {} does not fire again, disabling it", recurringJob.name());
+                disable(recurringJob.name());
+            } else {
+                names.add(recurringJob.name());
+                nextFireAts.add(fires.nextFireAt());
+            }
+        }
+
+        jobsRepository.addJobs(jobs);
+        if (!names.isEmpty()) {
+            jdbcTemplate.update("""
+                    UPDATE recurring_jobs r SET next_fire_at = n.next_fire_at
+                    FROM unnest(?::text[], ?::timestamptz[]) AS n(name, next_fire_at)
+                    WHERE r.name = n.name
+                    """, names.toArray(String[]::new),
+                    nextFireAts.stream().map(Instant::toString).toArray(String[]::new));
+        }
+        return jobs.size();
+    }
+
+    private void disable(String name) {
+        jdbcTemplate.update("UPDATE recurring_jobs SET enabled = false WHERE name = ?", name);
+    }
+}
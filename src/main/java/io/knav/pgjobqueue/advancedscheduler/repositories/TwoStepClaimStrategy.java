@@ -0,0 +1,130 @@
+package io.knav.pgjobqueue.advancedscheduler.repositories;
+
+import io.knav.pgjobqueue.advancedscheduler.codec.PayloadCodec;
+import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Locks the jobs with SELECT ... FOR UPDATE SKIP LOCKED, then marks them as processing through job_queue_view,
+ * so handle_job_update() runs once per claimed row, sets the lease and counts the attempt. The selects return the
+ * attempt count the update is about to write. Only the job_queue row is locked, the payload row is read as is.
+ */
+@Component
+@ConditionalOnProperty(name = "jobqueue.claim.strategy", havingValue = "two-step", matchIfMissing = true)
+public class TwoStepClaimStrategy implements ClaimStrategy {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JobNgRowMapper rowMapper;
+    private final String leaseDuration;
+
+    @Autowired
+    public TwoStepClaimStrategy(JdbcTemplate jdbcTemplate,
+                                PayloadCodec payloadCodec,
+                                @Value("${jobqueue.lease.duration-seconds:900}") long leaseSeconds) {
+
+        this.jdbcTemplate = jdbcTemplate;
+        this.rowMapper = new JobNgRowMapper(payloadCodec);
+        this.leaseDuration = leaseSeconds + " seconds";
+    }
+
+    @Override
+    @Transactional
+    public List<JobNg> claim(String queueName, int limit) {
+        // Lock and select jobs
+        List<JobNg> jobs = jdbcTemplate.query(
+                """
+                SELECT q.id, p.metadata, q.curr_job_status, q.priority, q.run_at, q.queue_name, p.job_type, q.enqueued_at,
+                       q.attempts + 1 AS attempts
+                FROM job_queue q
+                JOIN job_payload p ON p.id = q.id AND p.enqueued_at = q.enqueued_at
+                WHERE q.queue_name = ? AND q.curr_job_status = ? AND q.run_at <= NOW()
+                ORDER BY q.priority DESC, q.run_at
+                LIMIT ?
+                FOR UPDATE OF q SKIP LOCKED
+                """,
+                rowMapper,
+                queueName, "archive_pending", limit
+        );
+
+        markProcessing(jobs);
+        return jobs;
+    }
+
+    @Override
+    @Transactional
+    public List<JobNg> claim(String queueName, int[] buckets, int limit) {
+        // One ordered index range per bucket; the outer LIMIT stops walking buckets once enough rows are locked
+        List<JobNg> jobs = jdbcTemplate.query(
+                """
+                WITH locked AS (
+                    SELECT c.*
+                    FROM unnest(?::int[]) AS b(bucket)
+                    CROSS JOIN LATERAL (
+                        SELECT q.id, q.enqueued_at, q.curr_job_status, q.priority, q.run_at, q.queue_name, q.attempts
+                        FROM job_queue q
+                        WHERE q.queue_name = ? AND q.bucket = b.bucket AND q.curr_job_status = ? AND q.run_at <= NOW()
+                        ORDER BY q.priority DESC, q.run_at
+                        LIMIT ?
+                        FOR UPDATE SKIP LOCKED
+                    ) c
+                    LIMIT ?
+                )
+                SELECT l.id, p.metadata, l.curr_job_status, l.priority, l.run_at, l.queue_name, p.job_type, l.enqueued_at,
+                       l.attempts + 1 AS attempts
+                FROM locked l
+                JOIN job_payload p ON p.id = l.id AND p.enqueued_at = l.enqueued_at
+                """,
+                rowMapper,
+                buckets, queueName, "archive_pending", limit, limit
+        );
+
+        markProcessing(jobs);
+        return jobs;
+    }
+
+    @Override
+    @Transactional
+    public List<JobNg> claim(Collection<UUID> ids, int limit) {
+        List<JobNg> jobs = jdbcTemplate.query(
+                """
+                SELECT q.id, p.metadata, q.curr_job_status, q.priority, q.run_at, q.queue_name, p.job_type, q.enqueued_at,
+                       q.attempts + 1 AS attempts
+                FROM job_queue q
+                JOIN job_payload p ON p.id = q.id AND p.enqueued_at = q.enqueued_at
+                WHERE q.id = ANY(?) AND q.curr_job_status = ? AND q.run_at <= NOW()
+                ORDER BY q.priority DESC, q.run_at
+                LIMIT ?
+                FOR UPDATE OF q SKIP LOCKED
+                """,
+                rowMapper,
+                ids.toArray(UUID[]::new), "archive_pending", limit
+        );
+
+        markProcessing(jobs);
+        return jobs;
+    }
+
+    private void markProcessing(List<JobNg> jobs) {
+        // Get IDs from the fetched jobs
+        List<UUID> jobIds = jobs.stream().map(JobNg::id).toList();
+
+        // Update statuses if jobs are found
+        if (!jobIds.isEmpty()) {
+            // handle_job_update() reads the lease duration from this transaction-local setting
+            jdbcTemplate.queryForObject("SELECT set_config('jobqueue.lease_duration', ?, true)", String.class, leaseDuration);
+            jdbcTemplate.update(
+                    "UPDATE job_queue_view SET curr_job_status = ? WHERE id = ANY(?)",
+                    "archive_processing", jobIds.toArray(UUID[]::new)
+            );
+        }
+    }
+}
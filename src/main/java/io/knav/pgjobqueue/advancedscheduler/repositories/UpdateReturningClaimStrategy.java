@@ -0,0 +1,112 @@
+package io.knav.pgjobqueue.advancedscheduler.repositories;
+
+import io.knav.pgjobqueue.advancedscheduler.codec.PayloadCodec;
+import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Claims in one statement: the sub-select locks pending rows with SKIP LOCKED and the outer UPDATE moves them to
+ * archive_processing and returns them. It writes job_queue directly, so the per-row view trigger does not run;
+ * the job_transitions foreign key still validates the transition.
+ */
+@Component
+@ConditionalOnProperty(name = "jobqueue.claim.strategy", havingValue = "update-returning")
+public class UpdateReturningClaimStrategy implements ClaimStrategy {
+
+    static final String CLAIM_SQL = """
+            UPDATE job_queue q
+            SET prev_job_status = q.curr_job_status,
+                curr_job_status = 'archive_processing',
+                lease_expire = NOW() + make_interval(secs => ?),
+                attempts = q.attempts + 1
+            FROM job_payload p
+            WHERE p.id = q.id AND p.enqueued_at = q.enqueued_at
+            AND q.id IN (
+                SELECT id FROM job_queue
+                WHERE queue_name = ? AND curr_job_status = 'archive_pending' AND run_at <= NOW()
+                ORDER BY priority DESC, run_at
+                LIMIT ?
+                FOR UPDATE SKIP LOCKED
+            )
+            RETURNING q.id, p.metadata, q.curr_job_status, q.priority, q.run_at, q.queue_name, p.job_type, q.enqueued_at, q.attempts
+            """;
+
+    // Walks one ordered index range per bucket; the outer LIMIT stops at the first buckets that fill the claim
+    static final String CLAIM_FROM_BUCKETS_SQL = """
+            UPDATE job_queue q
+            SET prev_job_status = q.curr_job_status,
+                curr_job_status = 'archive_processing',
+                lease_expire = NOW() + make_interval(secs => ?),
+                attempts = q.attempts + 1
+            FROM job_payload p
+            WHERE p.id = q.id AND p.enqueued_at = q.enqueued_at
+            AND q.id IN (
+                SELECT c.id
+                FROM unnest(?::int[]) AS b(bucket)
+                CROSS JOIN LATERAL (
+                    SELECT id FROM job_queue
+                    WHERE queue_name = ? AND bucket = b.bucket AND curr_job_status = 'archive_pending' AND run_at <= NOW()
+                    ORDER BY priority DESC, run_at
+                    LIMIT ?
+                    FOR UPDATE SKIP LOCKED
+                ) c
+                LIMIT ?
+            )
+            RETURNING q.id, p.metadata, q.curr_job_status, q.priority, q.run_at, q.queue_name, p.job_type, q.enqueued_at, q.attempts
+            """;
+
+    static final String CLAIM_BY_ID_SQL = """
+            UPDATE job_queue q
+            SET prev_job_status = q.curr_job_status,
+                curr_job_status = 'archive_processing',
+                lease_expire = NOW() + make_interval(secs => ?),
+                attempts = q.attempts + 1
+            FROM job_payload p
+            WHERE p.id = q.id AND p.enqueued_at = q.enqueued_at
+            AND q.id IN (
+                SELECT id FROM job_queue
+                WHERE id = ANY(?) AND curr_job_status = 'archive_pending' AND run_at <= NOW()
+                LIMIT ?
+                FOR UPDATE SKIP LOCKED
+            )
+            RETURNING q.id, p.metadata, q.curr_job_status, q.priority, q.run_at, q.queue_name, p.job_type, q.enqueued_at, q.attempts
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JobNgRowMapper rowMapper;
+    private final long leaseSeconds;
+
+    @Autowired
+    public UpdateReturningClaimStrategy(JdbcTemplate jdbcTemplate,
+                                        PayloadCodec payloadCodec,
+                                        @Value("${jobqueue.lease.duration-seconds:900}") long leaseSeconds) {
+
+        this.jdbcTemplate = jdbcTemplate;
+        this.rowMapper = new JobNgRowMapper(payloadCodec);
+        this.leaseSeconds = leaseSeconds;
+    }
+
+    @Override
+    public List<JobNg> claim(String queueName, int limit) {
+        return jdbcTemplate.query(CLAIM_SQL, rowMapper, leaseSeconds, queueName, limit);
+    }
+
+    @Override
+    public List<JobNg> claim(String queueName, int[] buckets, int limit) {
+        return jdbcTemplate.query(CLAIM_FROM_BUCKETS_SQL, rowMapper,
+                leaseSeconds, buckets, queueName, limit, limit);
+    }
+
+    @Override
+    public List<JobNg> claim(Collection<UUID> ids, int limit) {
+        return jdbcTemplate.query(CLAIM_BY_ID_SQL, rowMapper, leaseSeconds, ids.toArray(UUID[]::new), limit);
+    }
+}
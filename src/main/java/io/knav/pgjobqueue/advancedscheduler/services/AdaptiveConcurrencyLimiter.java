@@ -0,0 +1,49 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import java.time.Duration;
+
+/**
+ * Additive-increase / multiplicative-decrease limit on the number of jobs a node processes at once.
+ * The limit grows by one slot while claims are fast and the backlog keeps filling every free slot,
+ * and shrinks by a quarter as soon as claims get slow or the connection pool runs out of connections.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double DECREASE_FACTOR = 0.75;
+    private static final double POOL_SATURATION_THRESHOLD = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetLatencyNanos;
+
+    private volatile int limit;
+
+    public AdaptiveConcurrencyLimiter(int minLimit, int maxLimit, int initialLimit, Duration targetLatency) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid concurrency bounds: min=" + minLimit + ", max=" + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.targetLatencyNanos = targetLatency.toNanos();
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    public int limit() {
+        return limit;
+    }
+
+    /**
+     * Feeds the outcome of one claim round trip back into the limit.
+     *
+     * @param claimLatency   time the claim query took
+     * @param backlogFull    whether the claim returned as many jobs as were asked for
+     * @param poolSaturation share of the connection pool in use, 1.0 or more when threads wait for a connection
+     */
+    public synchronized void onClaim(Duration claimLatency, boolean backlogFull, double poolSaturation) {
+        if (poolSaturation >= POOL_SATURATION_THRESHOLD || claimLatency.toNanos() > targetLatencyNanos) {
+            limit = Math.max(minLimit, (int) (limit * DECREASE_FACTOR));
+        } else if (backlogFull) {
+            limit = Math.min(maxLimit, limit + 1);
+        }
+    }
+}
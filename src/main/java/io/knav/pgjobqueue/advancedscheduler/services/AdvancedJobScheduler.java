@@ -1,42 +1,182 @@
 package io.knav.pgjobqueue.advancedscheduler.services;
 
-import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
-import io.knav.pgjobqueue.advancedscheduler.entities.Metadata;
-import io.knav.pgjobqueue.advancedscheduler.repositories.AdvancedJobRepository;
+import io.knav.pgjobqueue.advancedscheduler.repositories.RecurringJobRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 
-import java.util.UUID;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/*
+Fires the recurring jobs of recurring_jobs from exactly one node of the cluster.
+
+Every node competes for a session-level advisory lock. The node that gets it keeps the connection it took the
+lock on and is the leader: every tick it checks that connection and fires the due definitions. The other nodes
+try the lock again every tick. The lock goes away with the leader's session: a node that stops releases it, and
+a node that dies loses it once PostgreSQL closes its connection, which the TCP keepalive settings below bound to
+a few seconds even when the node vanished without closing it. A new leader takes over within a tick of that.
+
+Leadership only decides who does the work, not whether a fire is enqueued once: each fire is enqueued in the
+transaction that locks its row and moves next_fire_at, so two nodes that both believe they lead for a moment
+still enqueue every fire exactly once.
+ */
 @Component
+@ConditionalOnProperty(name = "jobqueue.recurring.enabled", havingValue = "true", matchIfMissing = true)
 public class AdvancedJobScheduler {
 
-    private final AdvancedJobRepository jobsRepository;
-    private final AdvancedJobService jobService;
+    private static final Logger log = LoggerFactory.getLogger(AdvancedJobScheduler.class);
+
+    // Next to AdvisoryLockClaimStrategy.CLAIM_LOCK_NAMESPACE, whose keys are job ids
+    static final int LEADER_LOCK_NAMESPACE = 7302;
+    static final int LEADER_LOCK_KEY = 1;
+
+    // The server drops a leader's silent connection, and with it the lock, after idle + interval * count seconds
+    private static final String KEEPALIVE_SQL = """
+            SELECT set_config('tcp_keepalives_idle', '5', false),
+                   set_config('tcp_keepalives_interval', '2', false),
+                   set_config('tcp_keepalives_count', '3', false)
+            """;
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final RecurringJobRepository recurringJobRepository;
+    private final DataSource dataSource;
+    private final int batchSize;
+    private final int maxFiresPerJob;
+    private final long tickMs;
+    private final Counter fired;
+    private final ScheduledExecutorService scheduler;
+
+    // Only used on the scheduler thread
+    private Connection leaderConnection;
+    private volatile boolean leader;
 
+    /**
+     * @param batchSize      definitions fired per transaction
+     * @param maxFiresPerJob missed fires of one definition enqueued per transaction while it catches up
+     */
     @Autowired
-    public AdvancedJobScheduler(AdvancedJobRepository jobsRepository,
-                                AdvancedJobService jobService) {
+    public AdvancedJobScheduler(RecurringJobRepository recurringJobRepository,
+                                DataSource dataSource,
+                                MeterRegistry meterRegistry,
+                                @Value("${jobqueue.recurring.batch-size:100}") int batchSize,
+                                @Value("${jobqueue.recurring.max-fires-per-job:500}") int maxFiresPerJob,
+                                @Value("${jobqueue.recurring.tick-ms:1000}") long tickMs) {
 
-        this.jobsRepository = jobsRepository;
-        this.jobService = jobService;
+        this.recurringJobRepository = recurringJobRepository;
+        this.dataSource = dataSource;
+        this.batchSize = batchSize;
+        this.maxFiresPerJob = maxFiresPerJob;
+        this.tickMs = tickMs;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("recurring-scheduler-"));
+        Gauge.builder("jobqueue.recurring.leader", this, s -> s.leader ? 1 : 0)
+                .description("1 on the node that fires recurring jobs, 0 elsewhere")
+                .register(meterRegistry);
+        this.fired = Counter.builder("jobqueue.recurring.fired")
+                .description("Jobs enqueued for fires of recurring jobs")
+                .baseUnit("jobs")
+                .register(meterRegistry);
     }
 
-    @Scheduled(cron = "0/2 * * * * ?")
-    public void addJobEveryMinute() {
-        // Logic to add a row to the database
-        System.out.println("Adding a row to the database every minute.");
-        // Assume a service that handles the database operation
-        jobsRepository.addJob(new JobNg(UUID.randomUUID(), new Metadata(UUID.randomUUID().toString()), "archive_pending"));
+    @PostConstruct
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::tick, 0, tickMs, TimeUnit.MILLISECONDS);
     }
 
-    @Scheduled(cron = "0/10 * * * * ?")
-    public void PollJobsEvery2Minute() {
-        // Logic to add a row to the database
-        System.out.println("Polling for Jobs");
-        var jobs = jobsRepository.fetchJobs();
-        jobs.forEach(jobService::processJob);
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        // Hands leadership over right away instead of after the keepalive timeout
+        scheduler.execute(this::resign);
+        scheduler.shutdown();
+        if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public boolean isLeader() {
+        return leader;
+    }
+
+    void tick() {
+        try {
+            if (!leader && !tryToLead()) {
+                return;
+            }
+            if (!leaderConnection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                log.warn("Lost the connection holding the recurring job leader lock, stepping down");
+                resign();
+                return;
+            }
+            // Definitions still catching up are due again right away; the last round finds nothing due
+            int enqueued;
+            do {
+                enqueued = recurringJobRepository.fireDueJobs(batchSize, maxFiresPerJob);
+                fired.increment(enqueued);
+            } while (enqueued > 0);
+        } catch (SQLException | RuntimeException e) {
+            // Stays leader unless the connection is gone, which the next tick finds out
+            log.warn("Recurring job tick failed: {}", e.getMessage());
+        }
+    }
+
+    private boolean tryToLead() throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            boolean acquired;
+            try (PreparedStatement statement = connection.prepareStatement("SELECT pg_try_advisory_lock(?, ?)")) {
+                statement.setInt(1, LEADER_LOCK_NAMESPACE);
+                statement.setInt(2, LEADER_LOCK_KEY);
+                try (ResultSet rs = statement.executeQuery()) {
+                    acquired = rs.next() && rs.getBoolean(1);
+                }
+            }
+            if (!acquired) {
+                connection.close();
+                return false;
+            }
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(KEEPALIVE_SQL);
+            }
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        leaderConnection = connection;
+        leader = true;
+        log.info("This node now fires the recurring jobs");
+        return true;
+    }
 
+    private void resign() {
+        leader = false;
+        Connection connection = leaderConnection;
+        leaderConnection = null;
+        if (connection == null) {
+            return;
+        }
+        // The connection goes back to the pool, without the lock and the keepalive settings
+        try (connection; Statement statement = connection.createStatement()) {
+            statement.execute("SELECT pg_advisory_unlock(" + LEADER_LOCK_NAMESPACE + ", " + LEADER_LOCK_KEY + ")");
+            statement.execute("RESET ALL");
+        } catch (SQLException e) {
+            log.debug("Releasing the recurring job leader lock failed: {}", e.getMessage());
+        }
     }
 }
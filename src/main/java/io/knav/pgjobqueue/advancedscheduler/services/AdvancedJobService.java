@@ -1,29 +1,143 @@
 package io.knav.pgjobqueue.advancedscheduler.services;
 
 import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
+import io.knav.pgjobqueue.advancedscheduler.entities.JobResult;
+import io.knav.pgjobqueue.advancedscheduler.entities.RetryPolicy;
 import io.knav.pgjobqueue.advancedscheduler.repositories.AdvancedJobRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
 @Service
 public class AdvancedJobService {
 
-    private final AdvancedJobRepository advancedJobRepository;
+    private static final Logger log = LoggerFactory.getLogger(AdvancedJobService.class);
+
+    private final JobAckBuffer ackBuffer;
+    private final JobHandlerRegistry handlerRegistry;
+    private final AdvancedJobRepository jobsRepository;
+    private final MeterRegistry meterRegistry;
+    private final long leaseSeconds;
+    // Keyed by job type and outcome; the builders allocate on every call even when the meter already exists
+    private final Map<List<String>, Timer> processingTimers = new ConcurrentHashMap<>();
+    private final Map<List<String>, Counter> retryCounters = new ConcurrentHashMap<>();
 
     @Autowired
-    public AdvancedJobService(AdvancedJobRepository advancedJobRepository) {
+    public AdvancedJobService(JobAckBuffer ackBuffer,
+                              JobHandlerRegistry handlerRegistry,
+                              AdvancedJobRepository jobsRepository,
+                              MeterRegistry meterRegistry,
+                              @Value("${jobqueue.lease.duration-seconds:900}") long leaseSeconds) {
 
-        this.advancedJobRepository = advancedJobRepository;
+        this.ackBuffer = ackBuffer;
+        this.handlerRegistry = handlerRegistry;
+        this.jobsRepository = jobsRepository;
+        this.meterRegistry = meterRegistry;
+        this.leaseSeconds = leaseSeconds;
     }
 
-    public void processJob(JobNg job) {
+    /**
+     * Runs one batch through its handler and acks every job with its own outcome. A failed job is retried after
+     * its job type's backoff, or moved to archive_dead once it has used up its attempts.
+     * Every job is timed with the duration of its batch, tagged with its outcome:
+     * {@code success}, {@code failure} or {@code error} when the handler threw.
+     * <p>
+     * Jobs that succeeded with follow-up jobs, from their result or the handler's next stage, are not acked through
+     * the buffer: one statement completes them and enqueues their follow-ups.
+     *
+     * @param localSlots how many follow-ups this node can run right away
+     * @return the follow-ups claimed for this node, to be run without another claim
+     */
+    public List<JobNg> processJobs(JobHandler handler, List<JobNg> jobs, int localSlots) {
 
+        Map<UUID, JobResult> results = new HashMap<>();
+        boolean threw = false;
+        long start = System.nanoTime();
         try {
-            var simulations = new AdvancedProcessingSimulation();
-            simulations.simulateProcessing(job);
-            advancedJobRepository.UpdateJobStatus(job.id(), "archive_completed");
+            for (JobResult result : handler.handle(jobs)) {
+                results.put(result.jobId(), result);
+            }
         } catch (Exception e) {
-            advancedJobRepository.UpdateJobStatus(job.id(), "archive_failed");
+            threw = true;
+            log.warn("Handler for {} failed a batch of {} jobs", handler.jobType(), jobs.size(), e);
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        RetryPolicy retryPolicy = handlerRegistry.retryPolicyFor(handler.jobType());
+        Instant now = Instant.now();
+        Map<UUID, List<JobNg>> followUps = new LinkedHashMap<>();
+        for (JobNg job : jobs) {
+            if (ackBuffer.isDiscarded(job.id())) {
+                // Released on shutdown while the handler ran; the job belongs to the queue again
+                continue;
+            }
+            JobResult result = results.get(job.id());
+            boolean succeeded = result != null && result.succeeded();
+            processingTimer(handler.jobType(), threw ? "error" : succeeded ? "success" : "failure")
+                    .record(elapsedNanos, TimeUnit.NANOSECONDS);
+            List<JobNg> next = succeeded ? nextStage(handler, job, result) : List.of();
+            if (!next.isEmpty()) {
+                followUps.put(job.id(), next);
+            } else if (succeeded) {
+                ackBuffer.ack(job.id(), "archive_completed");
+            } else if (retryPolicy.exhausted(job.attempts())) {
+                log.warn("Job {} of type {} failed attempt {} of {}, dead-lettering it", job.id(), handler.jobType(),
+                        job.attempts(), retryPolicy.maxAttempts());
+                retryCounter(handler.jobType(), "dead").increment();
+                ackBuffer.ack(job.id(), "archive_dead");
+            } else {
+                retryCounter(handler.jobType(), "retried").increment();
+                ackBuffer.retry(job.id(), now.plus(retryPolicy.backoff(job.attempts())));
+            }
         }
+        return followUps.isEmpty() ? List.of() : chain(followUps, localSlots);
+    }
+
+    private static List<JobNg> nextStage(JobHandler handler, JobNg job, JobResult result) {
+        if (!result.next().isEmpty() || handler.nextStage() == null) {
+            return result.next();
+        }
+        return List.of(new JobNg(UUID.randomUUID(), job.metadata(), "archive_pending", job.priority(), null,
+                job.queueName(), handler.nextStage()));
+    }
+
+    private List<JobNg> chain(Map<UUID, List<JobNg>> followUps, int localSlots) {
+        try {
+            return jobsRepository.completeAndChain(followUps, localSlots, leaseSeconds);
+        } catch (DataAccessException e) {
+            // Neither the jobs nor their follow-ups were written; the jobs run again once their lease expires
+            log.warn("Completing {} jobs with their next stage failed: {}", followUps.size(), e.getMessage());
+            return List.of();
+        }
+    }
+
+    private Counter retryCounter(String jobType, String outcome) {
+        return retryCounters.computeIfAbsent(List.of(jobType, outcome), key -> Counter.builder("jobqueue.job.retries")
+                .description("Failed jobs rescheduled with backoff or moved to archive_dead")
+                .tags("type", jobType, "outcome", outcome)
+                .register(meterRegistry));
+    }
+
+    private Timer processingTimer(String jobType, String outcome) {
+        return processingTimers.computeIfAbsent(List.of(jobType, outcome), key -> Timer.builder("jobqueue.job.processing")
+                .description("Handler time per job, the whole batch for batched handlers")
+                .tags("type", jobType, "outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
     }
 }
@@ -1,19 +1,15 @@
 package io.knav.pgjobqueue.advancedscheduler.services;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.github.jasync.sql.db.postgresql.PostgreSQLConnection;
-import com.github.jasync.sql.db.postgresql.util.URLParser;
-import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
-import io.knav.pgjobqueue.advancedscheduler.repositories.AdvancedJobRepository;
-import io.knav.pgjobqueue.simplescheduler.entities.Job;
-import io.knav.pgjobqueue.simplescheduler.repositories.JobsRepository;
+import com.github.jasync.sql.db.postgresql.messages.backend.NotificationResponse;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.nio.charset.Charset;
+import java.util.List;
 
 /*
 On each notification I should try fetching the row with skipped lock build with a notification
@@ -54,59 +50,71 @@ WHERE status = 'processing' AND last_updated < NOW() - INTERVAL '1 hour';
 @Service
 public class AdvancedNotificationService {
 
-    private final PostgreSQLConnection connection;
-    private final AdvancedJobService jobService;
-    private final AdvancedJobRepository jobsRepository;
+    private static final Logger log = LoggerFactory.getLogger(AdvancedNotificationService.class);
 
+    static final String WAKEUP_CHANNEL = "job_queue_wakeup";
+    static final String ROW_CHANNEL = "job_queue_rows";
+
+    private final ListenConnectionSupervisor listenSupervisor;
+    private final NotificationDispatcher dispatcher;
+    private final JobWorkerEngine workerEngine;
+    private final boolean wakeUpMode;
+    private final NotificationPayloads notificationPayloads;
+
+    /**
+     * @param notifyMode {@code wakeup} listens for the per-statement signal of notify_job_queue_wakeup() and
+     *                   answers it with a batch claim, {@code row} listens for the per-row job_queue_rows payloads
+     *                   of notify_job_queue_row() and claims those ids through the dispatcher. Row mode needs the
+     *                   Liquibase context 'row-notify', without it no job_queue_rows payload is ever published
+     */
     @Autowired
     public AdvancedNotificationService(
-            @Value("${spring.datasource.url}") String url,
-            @Value("${spring.datasource.username}") String username,
-            @Value("${spring.datasource.password}") String password,
-            AdvancedJobService jobService,
-            AdvancedJobRepository jobsRepository
+            ListenConnectionFactory listenConnectionFactory,
+            @Value("${jobqueue.notify.mode:wakeup}") String notifyMode,
+            NotificationDispatcher dispatcher,
+            JobWorkerEngine workerEngine,
+            NotificationPayloads notificationPayloads
             ) {
 
-        this.jobService = jobService;
-        this.jobsRepository = jobsRepository;
+        this.dispatcher = dispatcher;
+        this.workerEngine = workerEngine;
+        this.notificationPayloads = notificationPayloads;
+        this.wakeUpMode = !"row".equalsIgnoreCase(notifyMode);
 
-        String connectionUrl = String.format("%s?user=%s&password=%s", url, username, password);
-        connection = new PostgreSQLConnection(URLParser.INSTANCE.parseOrDie(connectionUrl, Charset.defaultCharset()));
+        String channel = wakeUpMode ? WAKEUP_CHANNEL : ROW_CHANNEL;
+        // Notifications sent while no one was listening are lost; a wake-up makes the engine claim whatever is
+        // pending, in batches, in both modes
+        this.listenSupervisor = listenConnectionFactory.supervise("advanced", List.of(channel),
+                this::onNotification, workerEngine::wakeUp);
     }
 
     @PostConstruct
     public void init() {
+        listenSupervisor.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        listenSupervisor.stop();
+    }
+
+    private void onNotification(NotificationResponse notification) {
+        log.debug("Received notification on channel {}: {}", notification.getChannel(), notification.getPayload());
+        // Runs on the jasync I/O thread: only signal or enqueue, claiming and processing happen elsewhere
+        if (wakeUpMode) {
+            onWakeUp(notification.getPayload());
+        } else {
+            dispatcher.offer(notification.getPayload());
+        }
+    }
 
-        ObjectMapper om = new ObjectMapper();
-
-        // Connect and listen to notifications
-        connection.connect().thenAccept(conn -> {
-            System.out.println("Connected to PostgreSQL database!");
-            conn.sendQuery("LISTEN jobs_notification").thenAccept(queryResult -> {
-                    System.out.println("Listening on channel 'jobs_notification'");
-                    }
-            );
-
-            // Handle notifications
-            conn.registerNotifyListener( notification -> {
-                System.out.println("**************************************************");
-                System.out.println("Received notification on channel " + notification.getChannel() + ": " + notification.getPayload());
-                System.out.println("**************************************************");
-                try {
-                    var job = om.readValue(notification.getPayload(), JobNg.class);
-                    var lockedJob = jobsRepository.fetchAndLockJobForProcessing(job.id());
-                    if(lockedJob.isProcessable()) {
-                        jobService.processJob(lockedJob);
-                    }
-
-                } catch (JsonProcessingException e) {
-                    throw new RuntimeException(e);
-                }
-                return null;
-            });
-        }).exceptionally(throwable -> {
-            System.err.println("Connection failed: " + throwable.getMessage());
-            return null;
-        });
+    private void onWakeUp(String payload) {
+        NotificationPayloads.WakeUpSignal signal = notificationPayloads.wakeUpSignal(payload);
+        if (signal == null || signal.count() > 0) {
+            workerEngine.wakeUp();
+        }
+        if (signal != null && signal.nextRunAt() != null) {
+            workerEngine.wakeUpAt(signal.nextRunAt());
+        }
     }
 }
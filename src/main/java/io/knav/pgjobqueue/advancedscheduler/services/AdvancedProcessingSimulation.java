@@ -2,11 +2,20 @@ package io.knav.pgjobqueue.advancedscheduler.services;
 
 import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
 import io.knav.pgjobqueue.simplescheduler.entities.Job;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
 public class AdvancedProcessingSimulation {
 
+    private static final Logger log = LoggerFactory.getLogger(AdvancedProcessingSimulation.class);
+
     private static final int MAX_SLEEP_TIME_MS = 5000; // Maximum sleep time in milliseconds
     private static final double FAILURE_RATE = 0.2; // 20% chance of failure
 
@@ -18,7 +27,7 @@ public class AdvancedProcessingSimulation {
         int sleepTime = random.nextInt(MAX_SLEEP_TIME_MS + 1); // Random sleep time up to MAX_SLEEP_TIME_MS
 
         try {
-            System.out.println("Processing starts. Sleeping for " + sleepTime + " ms.");
+            log.debug("Processing starts. Sleeping for {} ms.", sleepTime);
             Thread.sleep(sleepTime); // Sleep for a random time up to 5 seconds
 
             // Randomly decide if this attempt should fail
@@ -33,12 +42,12 @@ public class AdvancedProcessingSimulation {
                 result += Math.sin(random.nextDouble()) * Math.cos(random.nextDouble());
             }
 
-            System.out.println("Processing completed for Job : " + job.id());
+            log.debug("Processing completed for Job : {}", job.id());
         } catch (InterruptedException e) {
-            System.err.println("Processing was interrupted for Job: "  + job.id());
+            log.warn("Processing was interrupted for Job: {}", job.id());
             Thread.currentThread().interrupt();
         } catch (RuntimeException e) {
-            System.err.println("Error during processing: " + e.getMessage());
+            log.debug("Error during processing: {}", e.getMessage());
         }
     }
 
@@ -48,7 +57,7 @@ public class AdvancedProcessingSimulation {
         int sleepTime = random.nextInt(MAX_SLEEP_TIME_MS + 1); // Random sleep time up to MAX_SLEEP_TIME_MS
 
         try {
-            System.out.println("Processing starts. Sleeping for " + sleepTime + " ms.");
+            log.debug("Processing starts. Sleeping for {} ms.", sleepTime);
             Thread.sleep(sleepTime); // Sleep for a random time up to 5 seconds
 
             // Randomly decide if this attempt should fail
@@ -63,13 +72,42 @@ public class AdvancedProcessingSimulation {
                 result += Math.sin(random.nextDouble()) * Math.cos(random.nextDouble());
             }
 
-            System.out.println("Processing completed for Job : " + job.id());
+            log.debug("Processing completed for Job : {}", job.id());
         } catch (InterruptedException e) {
-            System.err.println("Processing was interrupted for Job: "  + job.id());
+            log.warn("Processing was interrupted for Job: {}", job.id());
             Thread.currentThread().interrupt();
         } catch (RuntimeException e) {
-            System.err.println("Error during processing: " + e.getMessage());
+            log.debug("Error during processing: {}", e.getMessage());
             throw e;
         }
     }
+
+    /**
+     * Simulates one downstream call for a whole batch: a single random delay, then each job fails on its own
+     * with the usual failure rate.
+     *
+     * @return ids of the jobs that failed, all of them if the call was interrupted
+     */
+    public Set<UUID> simulateProcessing(List<JobNg> jobs) {
+        Random random = new Random();
+        int sleepTime = random.nextInt(MAX_SLEEP_TIME_MS + 1);
+
+        try {
+            log.debug("Processing starts for {} jobs. Sleeping for {} ms.", jobs.size(), sleepTime);
+            Thread.sleep(sleepTime);
+        } catch (InterruptedException e) {
+            log.warn("Processing was interrupted for {} jobs", jobs.size());
+            Thread.currentThread().interrupt();
+            return jobs.stream().map(JobNg::id).collect(Collectors.toSet());
+        }
+
+        Set<UUID> failed = new HashSet<>();
+        for (JobNg job : jobs) {
+            if (random.nextDouble() < FAILURE_RATE) {
+                failed.add(job.id());
+            }
+        }
+        log.debug("Processing completed for {} of {} jobs", jobs.size() - failed.size(), jobs.size());
+        return failed;
+    }
 }
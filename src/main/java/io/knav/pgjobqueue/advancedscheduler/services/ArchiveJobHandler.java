@@ -0,0 +1,66 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
+import io.knav.pgjobqueue.advancedscheduler.entities.JobResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Handles the default {@code archive} jobs with the processing simulation, one simulated store call per batch.
+ */
+@Component
+public class ArchiveJobHandler implements JobHandler {
+
+    private final int batchSize;
+    private final Duration batchWait;
+    private final String nextStage;
+
+    /**
+     * @param nextStage job type archived documents continue as, empty to end the pipeline here
+     */
+    @Autowired
+    public ArchiveJobHandler(@Value("${jobqueue.handlers.archive.batch-size:1}") int batchSize,
+                             @Value("${jobqueue.handlers.archive.batch-wait-ms:0}") long batchWaitMs,
+                             @Value("${jobqueue.handlers.archive.next-stage:}") String nextStage) {
+
+        this.batchSize = batchSize;
+        this.batchWait = Duration.ofMillis(batchWaitMs);
+        this.nextStage = nextStage.isBlank() ? null : nextStage;
+    }
+
+    @Override
+    public String jobType() {
+        return JobNg.DEFAULT_TYPE;
+    }
+
+    @Override
+    public int maxBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public Duration maxBatchWait() {
+        return batchWait;
+    }
+
+    @Override
+    public String nextStage() {
+        return nextStage;
+    }
+
+    @Override
+    public List<JobResult> handle(List<JobNg> jobs) {
+        Set<UUID> failed = new AdvancedProcessingSimulation().simulateProcessing(jobs);
+        return jobs.stream()
+                .map(job -> failed.contains(job.id())
+                        ? JobResult.failure(job.id(), "Simulated processing failure")
+                        : JobResult.success(job.id()))
+                .toList();
+    }
+}
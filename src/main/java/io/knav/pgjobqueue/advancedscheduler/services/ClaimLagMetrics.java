@@ -0,0 +1,51 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Records how long claimed jobs waited between enqueue and claim, per claim path. For the notification path
+ * this is the notification-to-claim lag: the NOTIFY goes out when the enqueuing transaction commits.
+ * Enqueue time is the database clock, claim time the worker clock.
+ */
+@Component
+public class ClaimLagMetrics implements ClaimListener {
+
+    private final Map<ClaimPath, Timer> lag = new EnumMap<>(ClaimPath.class);
+
+    @Autowired
+    public ClaimLagMetrics(MeterRegistry meterRegistry) {
+        for (ClaimPath path : ClaimPath.values()) {
+            lag.put(path, Timer.builder("jobqueue.claim.lag")
+                    .description("Time from enqueue to claim")
+                    .tag("path", path.name().toLowerCase(Locale.ROOT))
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+    }
+
+    @Override
+    public void onClaimed(List<JobNg> jobs, ClaimPath path) {
+        Instant now = Instant.now();
+        Timer timer = lag.get(path);
+        for (JobNg job : jobs) {
+            // Delayed jobs only count from the time they became due
+            Instant due = job.runAt() != null && job.enqueuedAt() != null && job.runAt().isAfter(job.enqueuedAt())
+                    ? job.runAt() : job.enqueuedAt();
+            if (due != null) {
+                Duration waited = Duration.between(due, now);
+                timer.record(waited.isNegative() ? Duration.ZERO : waited);
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
+
+import java.util.List;
+
+/**
+ * Observes every batch of jobs {@link JobWorkerEngine} is about to run.
+ * Called on the claiming thread before the jobs are handed to their handlers, so it must not block.
+ * An exception is logged and does not keep the jobs from running.
+ */
+public interface ClaimListener {
+
+    void onClaimed(List<JobNg> jobs, ClaimPath path);
+}
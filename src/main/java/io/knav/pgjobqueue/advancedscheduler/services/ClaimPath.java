@@ -0,0 +1,19 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+/**
+ * How a job reached a worker.
+ */
+public enum ClaimPath {
+    /**
+     * Claimed by id from a row notification, or by a claim round a wake-up notification or timer started.
+     */
+    NOTIFICATION,
+    /**
+     * Claimed by a claim round that found the backlog still full or ran after the idle poll interval.
+     */
+    POLL,
+    /**
+     * Enqueued as the next pipeline stage of a job this node finished, already claimed by the enqueue.
+     */
+    CHAINED
+}
@@ -0,0 +1,79 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits the claim budget of a node across queues by deficit round-robin.
+ * On its turn a queue earns credit equal to its weight and is handed slots until the credit is used up,
+ * then the turn passes on, carrying over to the next call when the budget runs out mid-turn. Over time every
+ * active queue gets slots in proportion to its weight, and a small queue never waits longer than one turn of
+ * every other queue, however large their backlog.
+ */
+public class DeficitRoundRobin {
+
+    private final Map<String, Integer> weights;
+    private final int defaultWeight;
+    private final Map<String, Integer> deficits = new HashMap<>();
+    private int cursor;
+
+    public DeficitRoundRobin(Map<String, Integer> weights, int defaultWeight) {
+        if (defaultWeight < 1 || weights.values().stream().anyMatch(weight -> weight < 1)) {
+            throw new IllegalArgumentException("Queue weights must be at least 1: " + weights + ", default=" + defaultWeight);
+        }
+        this.weights = Map.copyOf(weights);
+        this.defaultWeight = defaultWeight;
+    }
+
+    /**
+     * Parses {@code queue:weight} pairs separated by commas, e.g. {@code default:1,tenant-a:4}.
+     */
+    public static Map<String, Integer> parseWeights(String spec) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String pair : spec.split(",")) {
+            if (pair.isBlank()) {
+                continue;
+            }
+            String[] parts = pair.split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected queue:weight but got '" + pair + "'");
+            }
+            weights.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+        }
+        return weights;
+    }
+
+    /**
+     * @param activeQueues queues with pending jobs, in a stable order
+     * @param budget       number of slots to hand out
+     * @return slots per queue, only queues that got at least one
+     */
+    public synchronized Map<String, Integer> allocate(List<String> activeQueues, int budget) {
+        // A queue that ran dry loses its remaining credit, as in classic DRR
+        deficits.keySet().retainAll(activeQueues);
+
+        Map<String, Integer> allocation = new LinkedHashMap<>();
+        if (activeQueues.isEmpty()) {
+            return allocation;
+        }
+        int remaining = budget;
+        while (remaining > 0) {
+            cursor %= activeQueues.size();
+            String queue = activeQueues.get(cursor);
+            int credit = deficits.getOrDefault(queue, 0);
+            if (credit == 0) {
+                credit = weights.getOrDefault(queue, defaultWeight);
+            }
+            int granted = Math.min(credit, remaining);
+            allocation.merge(queue, granted, Integer::sum);
+            remaining -= granted;
+            deficits.put(queue, credit - granted);
+            if (credit == granted) {
+                cursor++;
+            }
+        }
+        return allocation;
+    }
+}
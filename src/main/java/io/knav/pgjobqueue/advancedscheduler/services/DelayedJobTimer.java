@@ -0,0 +1,106 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+In-process timer for jobs whose run_at lies in the future.
+
+Tasks sit in a TimingWheel driven by a single thread that sleeps until the next bucket expires, so an
+idle node wakes up exactly when a delayed job becomes due instead of polling the database for it.
+Tasks run on the timer thread and must only signal, never block.
+ */
+@Service
+public class DelayedJobTimer {
+
+    private static final Logger log = LoggerFactory.getLogger(DelayedJobTimer.class);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition rescheduled = lock.newCondition();
+    private final TimingWheel wheel;
+
+    private volatile boolean running;
+    private Thread timerThread;
+
+    @Autowired
+    public DelayedJobTimer(@Value("${jobqueue.timer.tick-ms:10}") long tickMs,
+                           @Value("${jobqueue.timer.wheel-size:512}") int wheelSize) {
+
+        this.wheel = new TimingWheel(tickMs, wheelSize, System.currentTimeMillis());
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        timerThread = new Thread(this::runTimerLoop, "job-delay-timer");
+        timerThread.setDaemon(true);
+        timerThread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        timerThread.interrupt();
+    }
+
+    /**
+     * Runs {@code task} once {@code at} has passed, right away if it already has.
+     */
+    public void schedule(Instant at, Runnable task) {
+        boolean added;
+        lock.lock();
+        try {
+            added = wheel.add(at.toEpochMilli(), task);
+            if (added) {
+                rescheduled.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (!added) {
+            task.run();
+        }
+    }
+
+    private void runTimerLoop() {
+        while (running) {
+            List<Runnable> expired;
+            lock.lock();
+            try {
+                expired = wheel.advanceClock(System.currentTimeMillis());
+                if (expired.isEmpty()) {
+                    long next = wheel.nextExpiration();
+                    if (next == Long.MAX_VALUE) {
+                        rescheduled.await();
+                    } else if (next > System.currentTimeMillis()) {
+                        rescheduled.await(next - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                    }
+                    continue;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+            for (Runnable task : expired) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.warn("Delayed job timer task failed", e);
+                }
+            }
+        }
+    }
+}
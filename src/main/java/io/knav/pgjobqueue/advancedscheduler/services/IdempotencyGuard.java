@@ -0,0 +1,97 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import io.knav.pgjobqueue.advancedscheduler.repositories.AdvancedJobRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+/*
+Makes enqueue requests that carry an idempotency key create at most one job per key and scope. The scope
+is the table the job is written to, so the same key can be used once with POST /jobs and once with POST /job-queue.
+
+job_idempotency_keys is the source of truth: the job is written in the same statement as its key, with
+ON CONFLICT DO NOTHING, so a new key costs exactly the one insert an enqueue costs anyway, and a retried
+request can never create a second job, whichever node it reaches.
+
+In front of it sits a time-windowed Bloom filter of the keys this node enqueued recently. A key the filter
+has not seen goes straight to the insert. A key it may have seen is looked up first, and a hit is answered
+with the existing job without writing anything. A false positive only costs that one lookup.
+
+Keys are kept for jobqueue.idempotency.retention-seconds and then purged, after which they can be reused.
+ */
+@Service
+public class IdempotencyGuard {
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyGuard.class);
+
+    private final AdvancedJobRepository jobsRepository;
+    private final TimeWindowedBloomFilter recentKeys;
+    private final long retentionSeconds;
+    private final Counter duplicates;
+
+    @Autowired
+    public IdempotencyGuard(AdvancedJobRepository jobsRepository,
+                            MeterRegistry meterRegistry,
+                            @Value("${jobqueue.idempotency.retention-seconds:86400}") long retentionSeconds,
+                            @Value("${jobqueue.idempotency.filter-window-ms:600000}") long filterWindowMs,
+                            @Value("${jobqueue.idempotency.filter-expected-keys:1000000}") int filterExpectedKeys,
+                            @Value("${jobqueue.idempotency.filter-false-positive-rate:0.01}") double filterFalsePositiveRate) {
+
+        this.jobsRepository = jobsRepository;
+        this.retentionSeconds = retentionSeconds;
+        this.recentKeys = new TimeWindowedBloomFilter(filterWindowMs, filterExpectedKeys, filterFalsePositiveRate,
+                System.currentTimeMillis());
+        this.duplicates = Counter.builder("jobqueue.enqueue.duplicates")
+                .description("Enqueue requests answered with the job that already held their idempotency key")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Enqueues a job once per key and scope.
+     *
+     * @param scope          the IDEMPOTENCY_SCOPE of the repository that {@code insertIfAbsent} writes to
+     * @param insertIfAbsent writes the job together with its key, false if the key was already taken
+     * @return {@code jobId} if this call enqueued the job, otherwise the id of the job that holds the key
+     */
+    public UUID enqueueOnce(String scope, String idempotencyKey, UUID jobId, BooleanSupplier insertIfAbsent) {
+        long now = System.currentTimeMillis();
+        // Scopes are fixed names without a colon, so the filter keys of two scopes never collide
+        String filterKey = scope + ':' + idempotencyKey;
+        if (recentKeys.mightContain(filterKey, now)) {
+            UUID existing = jobsRepository.findJobIdByIdempotencyKey(scope, idempotencyKey);
+            if (existing != null) {
+                duplicates.increment();
+                return existing;
+            }
+        }
+        boolean inserted = insertIfAbsent.getAsBoolean();
+        recentKeys.add(filterKey, now);
+        if (inserted) {
+            return jobId;
+        }
+        // Taken by a request on another node, or one this node enqueued before the filter's window
+        duplicates.increment();
+        UUID existing = jobsRepository.findJobIdByIdempotencyKey(scope, idempotencyKey);
+        if (existing == null) {
+            // Purged between the insert and the lookup, so the key is free again
+            return insertIfAbsent.getAsBoolean() ? jobId : jobsRepository.findJobIdByIdempotencyKey(scope, idempotencyKey);
+        }
+        return existing;
+    }
+
+    @Scheduled(fixedDelayString = "${jobqueue.idempotency.purge-interval-ms:600000}")
+    public void purgeExpiredKeys() {
+        int purged = jobsRepository.deleteExpiredIdempotencyKeys(retentionSeconds);
+        if (purged > 0) {
+            log.info("Purged {} expired idempotency keys", purged);
+        }
+    }
+}
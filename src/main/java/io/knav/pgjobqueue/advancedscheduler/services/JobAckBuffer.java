@@ -0,0 +1,351 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import io.knav.pgjobqueue.advancedscheduler.repositories.AdvancedJobRepository;
+import io.knav.pgjobqueue.advancedscheduler.repositories.AsyncJobRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+Collects job outcomes from the workers and writes them in bulk.
+
+In buffered mode a flush happens every flush-size acks or every flush-interval, whichever comes first,
+and issues one array-based UPDATE per target status instead of one autocommit UPDATE per job. Retries of failed
+jobs are buffered alongside and written with one more UPDATE that sets each job's next run_at.
+In immediate mode every ack is written before ack() returns, as the service did before.
+
+With jobqueue.repository.mode=async a flush only sends its updates over the jasync pool and returns; up to
+max-in-flight-writes updates are outstanding at a time, and the flusher waits only when all of them are.
+
+Either way, whatever is still buffered is flushed synchronously on shutdown, after the workers have
+stopped, so an orderly shutdown never loses an outcome.
+ */
+@Service
+public class JobAckBuffer {
+
+    private static final Logger log = LoggerFactory.getLogger(JobAckBuffer.class);
+
+    private static final String PROCESSING = "archive_processing";
+
+    private record Ack(UUID jobId, String status) {}
+
+    private record Retry(UUID jobId, Instant runAt) {}
+
+    private final AdvancedJobRepository jobsRepository;
+    private final AsyncJobRepository asyncRepository;
+    private final Semaphore asyncWrites;
+    private final int maxAsyncWrites;
+    private final boolean buffered;
+    private final int flushSize;
+    private final long flushIntervalMs;
+    private final Timer flushLatency;
+    private final DistributionSummary flushSizes;
+
+    private final Queue<Ack> pending = new ConcurrentLinkedQueue<>();
+    private final Queue<Retry> retries = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    // Jobs released to other nodes on shutdown; an outcome that arrives for them afterwards is stale
+    private final Set<UUID> discarded = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushRequested = lock.newCondition();
+
+    private volatile boolean running;
+    private Thread flusherThread;
+
+    /**
+     * @param mode {@code buffered} to batch acks, {@code immediate} to write each ack synchronously
+     */
+    @Autowired
+    public JobAckBuffer(AdvancedJobRepository jobsRepository,
+                        Optional<AsyncJobRepository> asyncRepository,
+                        MeterRegistry meterRegistry,
+                        @Value("${jobqueue.ack.mode:buffered}") String mode,
+                        @Value("${jobqueue.ack.flush-size:500}") int flushSize,
+                        @Value("${jobqueue.ack.flush-interval-ms:50}") long flushIntervalMs,
+                        @Value("${jobqueue.async.max-in-flight-writes:4}") int maxAsyncWrites) {
+
+        this.jobsRepository = jobsRepository;
+        this.asyncRepository = asyncRepository.orElse(null);
+        this.maxAsyncWrites = maxAsyncWrites;
+        this.asyncWrites = new Semaphore(maxAsyncWrites);
+        this.buffered = !"immediate".equalsIgnoreCase(mode);
+        this.flushSize = flushSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.flushLatency = Timer.builder("jobqueue.ack.flush.latency")
+                .description("Time to write one flush of acks")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.flushSizes = DistributionSummary.builder("jobqueue.ack.flush.size")
+                .description("Acks written per flush")
+                .baseUnit("acks")
+                .register(meterRegistry);
+        Gauge.builder("jobqueue.ack.pending", pendingCount, AtomicInteger::get)
+                .description("Acks buffered and not yet written")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!buffered) {
+            return;
+        }
+        running = true;
+        flusherThread = new Thread(this::runFlushLoop, "job-ack-flusher");
+        flusherThread.setDaemon(true);
+        flusherThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (running) {
+            running = false;
+            flusherThread.interrupt();
+            flusherThread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        flush();
+        // Wait for the async writes still on the wire
+        if (asyncWrites.tryAcquire(maxAsyncWrites, 5, TimeUnit.SECONDS)) {
+            asyncWrites.release(maxAsyncWrites);
+        }
+    }
+
+    /**
+     * Records the outcome of a job that was claimed into archive_processing.
+     */
+    public void ack(UUID jobId, String status) {
+        if (isDiscarded(jobId)) {
+            return;
+        }
+        if (!buffered) {
+            jobsRepository.updateJobStatuses(List.of(jobId), PROCESSING, status);
+            return;
+        }
+        pending.add(new Ack(jobId, status));
+        if (pendingCount.incrementAndGet() >= flushSize) {
+            requestFlush();
+        }
+    }
+
+    /**
+     * Records that a job claimed into archive_processing failed and is due again at {@code runAt}.
+     */
+    public void retry(UUID jobId, Instant runAt) {
+        if (isDiscarded(jobId)) {
+            return;
+        }
+        if (!buffered) {
+            jobsRepository.retryJobs(List.of(jobId), List.of(runAt));
+            return;
+        }
+        retries.add(new Retry(jobId, runAt));
+        if (pendingCount.incrementAndGet() >= flushSize) {
+            requestFlush();
+        }
+    }
+
+    /**
+     * Drops the outcomes of jobs this node gave up, buffered or still to come, so they cannot overwrite a claim
+     * another node made since.
+     */
+    public void discard(Collection<UUID> jobIds) {
+        discarded.addAll(jobIds);
+    }
+
+    public boolean isDiscarded(UUID jobId) {
+        return !discarded.isEmpty() && discarded.contains(jobId);
+    }
+
+    public int pendingAcks() {
+        return pendingCount.get();
+    }
+
+    /**
+     * Writes every buffered ack, one update per target status, and every buffered retry in one more update.
+     */
+    public void flush() {
+        Map<String, List<UUID>> byStatus = drain();
+        List<Retry> due = drainRetries();
+        if (byStatus.isEmpty() && due.isEmpty()) {
+            return;
+        }
+        flushSizes.record(byStatus.values().stream().mapToInt(List::size).sum() + due.size());
+        if (asyncRepository != null) {
+            byStatus.forEach(this::writeAsync);
+            if (!due.isEmpty()) {
+                writeRetriesAsync(due);
+            }
+            return;
+        }
+        long start = System.nanoTime();
+        byStatus.forEach(this::write);
+        if (!due.isEmpty()) {
+            writeRetries(due);
+        }
+        flushLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void runFlushLoop() {
+        while (running) {
+            try {
+                awaitFlushRequest();
+                flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Flushing job acks failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void requestFlush() {
+        lock.lock();
+        try {
+            flushRequested.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitFlushRequest() throws InterruptedException {
+        lock.lock();
+        try {
+            if (pendingCount.get() < flushSize) {
+                flushRequested.await(flushIntervalMs, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Map<String, List<UUID>> drain() {
+        Map<String, List<UUID>> byStatus = new LinkedHashMap<>();
+        Ack ack;
+        while ((ack = pending.poll()) != null) {
+            pendingCount.decrementAndGet();
+            if (isDiscarded(ack.jobId())) {
+                continue;
+            }
+            byStatus.computeIfAbsent(ack.status(), status -> new ArrayList<>()).add(ack.jobId());
+        }
+        return byStatus;
+    }
+
+    private List<Retry> drainRetries() {
+        List<Retry> due = new ArrayList<>();
+        Retry retry;
+        while ((retry = retries.poll()) != null) {
+            pendingCount.decrementAndGet();
+            if (!isDiscarded(retry.jobId())) {
+                due.add(retry);
+            }
+        }
+        return due;
+    }
+
+    private void write(String status, List<UUID> jobIds) {
+        try {
+            jobsRepository.updateJobStatuses(jobIds, PROCESSING, status);
+        } catch (DataIntegrityViolationException e) {
+            // One invalid transition fails the whole statement, retry row by row to isolate it
+            writeOneByOne(status, jobIds);
+        } catch (DataAccessException e) {
+            log.warn("Writing {} acks failed, keeping them for the next flush: {}", jobIds.size(), e.getMessage());
+            jobIds.forEach(jobId -> {
+                pending.add(new Ack(jobId, status));
+                pendingCount.incrementAndGet();
+            });
+        }
+    }
+
+    private void writeAsync(String status, List<UUID> jobIds) {
+        asyncWrites.acquireUninterruptibly();
+        long start = System.nanoTime();
+        asyncRepository.updateJobStatuses(jobIds, PROCESSING, status).whenComplete((updated, error) -> {
+            asyncWrites.release();
+            if (error == null) {
+                flushLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            } else if (AsyncJobRepository.isRejectedTransition(error)) {
+                // As in write(): isolate the invalid transition, here without blocking the event loop
+                jobIds.forEach(jobId -> asyncRepository.updateJobStatuses(List.of(jobId), PROCESSING, status)
+                        .exceptionally(rejected -> {
+                            log.warn("Rejected transition to {} for Job: {}: {}", status, jobId, rejected.getMessage());
+                            return 0;
+                        }));
+            } else {
+                log.warn("Writing {} acks failed, keeping them for the next flush: {}", jobIds.size(), error.getMessage());
+                jobIds.forEach(jobId -> {
+                    pending.add(new Ack(jobId, status));
+                    pendingCount.incrementAndGet();
+                });
+            }
+        });
+    }
+
+    private void writeRetries(List<Retry> due) {
+        try {
+            jobsRepository.retryJobs(due.stream().map(Retry::jobId).toList(), due.stream().map(Retry::runAt).toList());
+        } catch (DataAccessException e) {
+            log.warn("Writing {} retries failed, keeping them for the next flush: {}", due.size(), e.getMessage());
+            keepRetries(due);
+        }
+    }
+
+    private void writeRetriesAsync(List<Retry> due) {
+        asyncWrites.acquireUninterruptibly();
+        long start = System.nanoTime();
+        asyncRepository.retryJobs(due.stream().map(Retry::jobId).toList(), due.stream().map(Retry::runAt).toList())
+                .whenComplete((updated, error) -> {
+                    asyncWrites.release();
+                    if (error == null) {
+                        flushLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    } else {
+                        log.warn("Writing {} retries failed, keeping them for the next flush: {}", due.size(), error.getMessage());
+                        keepRetries(due);
+                    }
+                });
+    }
+
+    private void keepRetries(List<Retry> due) {
+        retries.addAll(due);
+        pendingCount.addAndGet(due.size());
+    }
+
+    private void writeOneByOne(String status, List<UUID> jobIds) {
+        for (UUID jobId : jobIds) {
+            try {
+                jobsRepository.updateJobStatuses(List.of(jobId), PROCESSING, status);
+            } catch (DataAccessException e) {
+                log.warn("Rejected transition to {} for Job: {}: {}", status, jobId, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Collects claimed jobs of one type into batches for its JobHandler. A batch is handed to {@code sink} as soon as
+ * it is full, or once its first job has waited maxBatchWait; with no wait configured, whatever one claim brought
+ * in goes out right away. The sink must not block, it may be called from the timer thread.
+ */
+class JobBatcher {
+
+    private final JobHandler handler;
+    private final DelayedJobTimer timer;
+    private final Consumer<List<JobNg>> sink;
+
+    private List<JobNg> pending = new ArrayList<>();
+    private long generation;
+    private long armedGeneration = -1;
+
+    JobBatcher(JobHandler handler, DelayedJobTimer timer, Consumer<List<JobNg>> sink) {
+        this.handler = handler;
+        this.timer = timer;
+        this.sink = sink;
+    }
+
+    void add(List<JobNg> jobs) {
+        List<List<JobNg>> ready = new ArrayList<>();
+        long flushGeneration = -1;
+        synchronized (this) {
+            int batchSize = Math.max(1, handler.maxBatchSize());
+            for (JobNg job : jobs) {
+                pending.add(job);
+                if (pending.size() >= batchSize) {
+                    ready.add(takePending());
+                }
+            }
+            if (!pending.isEmpty()) {
+                if (handler.maxBatchWait().isZero()) {
+                    ready.add(takePending());
+                } else if (armedGeneration != generation) {
+                    // First jobs of a new partial batch: arm its flush
+                    armedGeneration = generation;
+                    flushGeneration = generation;
+                }
+            }
+        }
+        if (flushGeneration >= 0) {
+            long scheduled = flushGeneration;
+            timer.schedule(Instant.now().plus(handler.maxBatchWait()), () -> flush(scheduled));
+        }
+        ready.forEach(sink);
+    }
+
+    private void flush(long scheduledGeneration) {
+        List<JobNg> batch;
+        synchronized (this) {
+            if (scheduledGeneration != generation || pending.isEmpty()) {
+                return;
+            }
+            batch = takePending();
+        }
+        sink.accept(batch);
+    }
+
+    private List<JobNg> takePending() {
+        List<JobNg> batch = pending;
+        pending = new ArrayList<>();
+        generation++;
+        return batch;
+    }
+}
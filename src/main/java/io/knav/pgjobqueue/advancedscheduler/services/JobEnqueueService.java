@@ -0,0 +1,143 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import io.knav.pgjobqueue.advancedscheduler.entities.EnqueueBatchResult;
+import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
+import io.knav.pgjobqueue.advancedscheduler.repositories.AdvancedJobRepository;
+import io.knav.pgjobqueue.advancedscheduler.repositories.AsyncJobRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Writes a stream of jobs to job_queue in fixed-size batches, one round trip per batch.
+ * Only the current batch is held in memory, so the source can be a request body of any size.
+ * Every batch commits on its own and reports its own outcome: a batch that fails is returned with its error and
+ * the batches after it are still written, so the caller knows exactly which ids were stored and which to resend.
+ * With the async repository up to max-in-flight-writes batches are on the wire at once, with the same per-batch
+ * outcomes.
+ */
+@Service
+public class JobEnqueueService {
+
+    private static final Logger log = LoggerFactory.getLogger(JobEnqueueService.class);
+
+    private final Consumer<List<JobNg>> writer;
+    private final Function<List<JobNg>, CompletableFuture<Void>> asyncWriter;
+    private final int batchSize;
+    private final int maxInFlightBatches;
+
+    @Autowired
+    public JobEnqueueService(AdvancedJobRepository jobsRepository,
+                             Optional<AsyncJobRepository> asyncRepository,
+                             @Value("${jobqueue.enqueue.batch-size:1000}") int batchSize,
+                             @Value("${jobqueue.async.max-in-flight-writes:4}") int maxInFlightBatches) {
+
+        this(jobsRepository::addJobs, asyncRepository.<Function<List<JobNg>, CompletableFuture<Void>>>map(
+                repository -> repository::addJobs).orElse(null), batchSize, maxInFlightBatches);
+    }
+
+    /**
+     * @param asyncWriter sends a batch without waiting for it, null to write every batch with {@code writer}
+     */
+    JobEnqueueService(Consumer<List<JobNg>> writer,
+                      Function<List<JobNg>, CompletableFuture<Void>> asyncWriter,
+                      int batchSize,
+                      int maxInFlightBatches) {
+
+        this.writer = writer;
+        this.asyncWriter = asyncWriter;
+        this.batchSize = batchSize;
+        this.maxInFlightBatches = maxInFlightBatches;
+    }
+
+    public List<EnqueueBatchResult> enqueue(Iterator<JobNg> jobs) {
+        if (asyncWriter != null) {
+            return enqueuePipelined(jobs);
+        }
+        List<EnqueueBatchResult> results = new ArrayList<>();
+        List<JobNg> batch = new ArrayList<>(batchSize);
+        while (jobs.hasNext()) {
+            batch.add(jobs.next());
+            if (batch.size() == batchSize) {
+                results.add(write(results.size(), batch));
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            results.add(write(results.size(), batch));
+        }
+        return results;
+    }
+
+    private List<EnqueueBatchResult> enqueuePipelined(Iterator<JobNg> jobs) {
+        List<CompletableFuture<EnqueueBatchResult>> results = new ArrayList<>();
+        Deque<CompletableFuture<EnqueueBatchResult>> inFlight = new ArrayDeque<>();
+        List<JobNg> batch = new ArrayList<>(batchSize);
+        while (jobs.hasNext()) {
+            batch.add(jobs.next());
+            if (batch.size() == batchSize) {
+                results.add(writeAsync(results.size(), batch, inFlight));
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            results.add(writeAsync(results.size(), batch, inFlight));
+        }
+        return results.stream().map(CompletableFuture::join).toList();
+    }
+
+    private CompletableFuture<EnqueueBatchResult> writeAsync(int batchNumber, List<JobNg> batch,
+                                                             Deque<CompletableFuture<EnqueueBatchResult>> inFlight) {
+        // Bounds the batches held in memory while the source is read faster than the database writes
+        if (inFlight.size() >= maxInFlightBatches) {
+            inFlight.removeFirst().join();
+        }
+        long start = System.nanoTime();
+        List<UUID> ids = batch.stream().map(JobNg::id).toList();
+        CompletableFuture<Void> write;
+        try {
+            write = asyncWriter.apply(batch);
+        } catch (RuntimeException e) {
+            write = CompletableFuture.failedFuture(e);
+        }
+        // Never completes exceptionally, so waiting on it cannot abort the batches behind it
+        CompletableFuture<EnqueueBatchResult> result = write.handle((done, error) -> {
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            if (error == null) {
+                return new EnqueueBatchResult(batchNumber, ids, elapsedMs);
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            log.warn("Enqueueing batch {} of {} jobs failed: {}", batchNumber, batch.size(), cause.getMessage());
+            return new EnqueueBatchResult(batchNumber, ids, elapsedMs, cause.getMessage());
+        });
+        inFlight.addLast(result);
+        return result;
+    }
+
+    private EnqueueBatchResult write(int batchNumber, List<JobNg> batch) {
+        long start = System.nanoTime();
+        List<UUID> ids = batch.stream().map(JobNg::id).toList();
+        try {
+            writer.accept(batch);
+        } catch (RuntimeException e) {
+            // The batch rolled back on its own, the ones already written stay written
+            log.warn("Enqueueing batch {} of {} jobs failed: {}", batchNumber, batch.size(), e.getMessage());
+            return new EnqueueBatchResult(batchNumber, ids, (System.nanoTime() - start) / 1_000_000, e.getMessage());
+        }
+        return new EnqueueBatchResult(batchNumber, ids, (System.nanoTime() - start) / 1_000_000);
+    }
+}
@@ -0,0 +1,334 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import com.github.jasync.sql.db.postgresql.messages.backend.NotificationResponse;
+import io.knav.pgjobqueue.advancedscheduler.entities.JobEvent;
+import io.knav.pgjobqueue.advancedscheduler.repositories.AdvancedJobRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+Streams job status changes to HTTP subscribers.
+
+One supervised LISTEN connection per node receives job_status_events, the batched status changes of job_queue.
+Jobs of the simple scheduler (archive_jobs) never reach a terminal status and are not streamed. The notify
+listener runs on the jasync event loop, so it only looks the job and its queue up in the subscription maps and
+offers the event to each matching subscriber's bounded buffer. A small sender pool writes the buffers to the SSE
+connections, one drain per subscriber at a time.
+
+A subscriber whose buffer is full is evicted: its stream is closed, and the client reconnects and starts
+over with the current status instead of slowing down the fan-out for everyone else.
+
+A job subscription first gets the job's current status, so a job that finished before the subscription
+still produces an event, and is closed after the first terminal status; a job that is not in job_queue gets
+its stream closed right away, and so does a job whose status cannot be read. After the LISTEN connection was
+lost, every job subscriber is sent its current status again, read with one query.
+
+The trigger only publishes the events of queues listed in job_event_subscriptions, so the status updates of
+unwatched queues pay no NOTIFY. A node registers a queue when it gets its first subscriber, directly or through a
+watched job, and keeps the rows of all its watched queues alive with a heartbeat. A queue nobody watches anymore
+is not deregistered, its row just expires, and the rows of a node that died expire the same way.
+ */
+@Service
+public class JobEventHub {
+
+    private static final Logger log = LoggerFactory.getLogger(JobEventHub.class);
+
+    static final String STATUS_EVENTS_CHANNEL = "job_status_events";
+
+    private final AdvancedJobRepository jobsRepository;
+    private final NotificationPayloads notificationPayloads;
+    private final ListenConnectionSupervisor listenSupervisor;
+    private final ExecutorService senders;
+    private final int bufferSize;
+    private final long timeoutMs;
+    private final long subscriptionTtlSeconds;
+    private final String nodeId;
+    private final Counter evicted;
+
+    private final Map<UUID, Set<Subscriber>> byJob = new ConcurrentHashMap<>();
+    private final Map<String, Set<Subscriber>> byQueue = new ConcurrentHashMap<>();
+    private final AtomicInteger subscribers = new AtomicInteger();
+    // When this node's job_event_subscriptions row of each watched queue expires, in epoch millis
+    private final Map<String, Long> registeredUntil = new ConcurrentHashMap<>();
+
+    @Autowired
+    public JobEventHub(AdvancedJobRepository jobsRepository,
+                       NotificationPayloads notificationPayloads,
+                       ListenConnectionFactory listenConnectionFactory,
+                       MeterRegistry meterRegistry,
+                       @Value("${jobqueue.events.buffer-size:256}") int bufferSize,
+                       @Value("${jobqueue.events.sender-threads:4}") int senderThreads,
+                       @Value("${jobqueue.events.timeout-ms:1800000}") long timeoutMs,
+                       @Value("${jobqueue.events.subscription-ttl-seconds:30}") long subscriptionTtlSeconds) {
+
+        this(jobsRepository, notificationPayloads, listenConnectionFactory, meterRegistry,
+                Executors.newFixedThreadPool(senderThreads, new CustomizableThreadFactory("job-event-sender-")),
+                bufferSize, timeoutMs, subscriptionTtlSeconds);
+    }
+
+    JobEventHub(AdvancedJobRepository jobsRepository,
+                NotificationPayloads notificationPayloads,
+                ListenConnectionFactory listenConnectionFactory,
+                MeterRegistry meterRegistry,
+                ExecutorService senders,
+                int bufferSize,
+                long timeoutMs,
+                long subscriptionTtlSeconds) {
+
+        this.jobsRepository = jobsRepository;
+        this.notificationPayloads = notificationPayloads;
+        this.bufferSize = bufferSize;
+        this.timeoutMs = timeoutMs;
+        this.subscriptionTtlSeconds = subscriptionTtlSeconds;
+        this.nodeId = ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID();
+        this.senders = senders;
+        this.listenSupervisor = listenConnectionFactory.supervise("events",
+                List.of(STATUS_EVENTS_CHANNEL),
+                this::onNotification, () -> senders.execute(this::resendJobStatuses));
+        Gauge.builder("jobqueue.events.subscribers", subscribers, AtomicInteger::get)
+                .description("Open job event streams")
+                .register(meterRegistry);
+        this.evicted = Counter.builder("jobqueue.events.evicted")
+                .description("Event streams closed because the client did not keep up")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        listenSupervisor.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        listenSupervisor.stop();
+        senders.shutdownNow();
+        byJob.values().forEach(set -> set.forEach(subscriber -> subscriber.emitter.complete()));
+        byQueue.values().forEach(set -> set.forEach(subscriber -> subscriber.emitter.complete()));
+        if (!registeredUntil.isEmpty()) {
+            try {
+                jobsRepository.unwatchQueues(nodeId);
+            } catch (DataAccessException e) {
+                log.warn("Removing the event subscriptions of node {} failed, they expire on their own: {}", nodeId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Streams the status changes of one job, starting with its current status, until it reaches a terminal one.
+     */
+    public SseEmitter subscribeToJob(UUID jobId) {
+        Subscriber subscriber = register(byJob, jobId, true);
+        senders.execute(() -> {
+            try {
+                List<JobEvent> current = jobsRepository.findJobStatuses(List.of(jobId));
+                if (current.isEmpty()) {
+                    subscriber.unregister.run();
+                    subscriber.emitter.complete();
+                    return;
+                }
+                subscriber.queue = current.get(0).queue();
+                watch(subscriber.queue);
+                // A change between the first read and the registration was not published
+                jobsRepository.findJobStatuses(List.of(jobId)).forEach(subscriber::offer);
+            } catch (DataAccessException e) {
+                log.warn("Reading the status of job {} failed, closing its stream: {}", jobId, e.getMessage());
+                subscriber.unregister.run();
+                subscriber.emitter.completeWithError(e);
+            }
+        });
+        return subscriber.emitter;
+    }
+
+    /**
+     * Streams the status changes of every job of a queue.
+     */
+    public SseEmitter subscribeToQueue(String queue) {
+        SseEmitter emitter = register(byQueue, queue, false).emitter;
+        watch(queue);
+        return emitter;
+    }
+
+    /**
+     * Extends the registrations of all watched queues; also registers those whose first registration failed.
+     */
+    @Scheduled(fixedDelayString = "${jobqueue.events.subscription-refresh-ms:10000}")
+    public void refreshSubscriptions() {
+        Set<String> watched = new HashSet<>(byQueue.keySet());
+        byJob.values().forEach(set -> set.forEach(subscriber -> {
+            if (subscriber.queue != null) {
+                watched.add(subscriber.queue);
+            }
+        }));
+        registeredUntil.keySet().retainAll(watched);
+        if (!watched.isEmpty()) {
+            registerQueues(watched);
+        }
+    }
+
+    // Called for every new subscriber, so it only goes to the database when the queue's row is about to expire
+    private void watch(String queue) {
+        Long until = registeredUntil.get(queue);
+        if (until == null || until - System.currentTimeMillis() < subscriptionTtlSeconds * 500) {
+            registerQueues(List.of(queue));
+        }
+    }
+
+    private void registerQueues(Collection<String> queues) {
+        long until = System.currentTimeMillis() + subscriptionTtlSeconds * 1000;
+        try {
+            jobsRepository.watchQueues(nodeId, queues, subscriptionTtlSeconds);
+            queues.forEach(queue -> registeredUntil.put(queue, until));
+        } catch (DataAccessException e) {
+            log.warn("Registering the event subscriptions of {} queues failed, retrying with the next refresh: {}",
+                    queues.size(), e.getMessage());
+        }
+    }
+
+    private <K> Subscriber register(Map<K, Set<Subscriber>> index, K key, boolean closeOnTerminal) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscriber subscriber = new Subscriber(emitter, closeOnTerminal);
+        index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        subscribers.incrementAndGet();
+
+        Runnable unregister = () -> {
+            if (subscriber.closed.compareAndSet(false, true)) {
+                index.computeIfPresent(key, (k, set) -> {
+                    set.remove(subscriber);
+                    return set.isEmpty() ? null : set;
+                });
+                subscribers.decrementAndGet();
+            }
+        };
+        subscriber.unregister = unregister;
+        emitter.onCompletion(unregister);
+        emitter.onTimeout(unregister);
+        emitter.onError(error -> unregister.run());
+        return subscriber;
+    }
+
+    private void onNotification(NotificationResponse notification) {
+        dispatch(notification.getPayload());
+    }
+
+    // Runs on the jasync I/O thread: map lookups and non-blocking offers only
+    void dispatch(String payload) {
+        if (byJob.isEmpty() && byQueue.isEmpty()) {
+            return;
+        }
+        for (JobEvent event : notificationPayloads.jobEvents(payload)) {
+            publish(byJob.get(event.jobId()), event);
+            if (event.queue() != null) {
+                publish(byQueue.get(event.queue()), event);
+            }
+        }
+    }
+
+    private void publish(Set<Subscriber> matching, JobEvent event) {
+        if (matching != null) {
+            matching.forEach(subscriber -> subscriber.offer(event));
+        }
+    }
+
+    // Events sent while the LISTEN connection was down are gone; the current status is all a job subscriber needs
+    private void resendJobStatuses() {
+        List<UUID> jobIds = new ArrayList<>(byJob.keySet());
+        if (jobIds.isEmpty()) {
+            return;
+        }
+        try {
+            for (JobEvent event : jobsRepository.findJobStatuses(jobIds)) {
+                publish(byJob.get(event.jobId()), event);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Re-reading the status of {} watched jobs failed: {}", jobIds.size(), e.getMessage());
+        }
+    }
+
+    private final class Subscriber {
+
+        private final SseEmitter emitter;
+        private final boolean closeOnTerminal;
+        private final BlockingQueue<JobEvent> buffer = new ArrayBlockingQueue<>(bufferSize);
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private Runnable unregister;
+        // The queue of a job subscriber's job, null until the job was looked up
+        private volatile String queue;
+
+        private Subscriber(SseEmitter emitter, boolean closeOnTerminal) {
+            this.emitter = emitter;
+            this.closeOnTerminal = closeOnTerminal;
+        }
+
+        void offer(JobEvent event) {
+            if (closed.get()) {
+                return;
+            }
+            if (!buffer.offer(event)) {
+                evicted.increment();
+                log.debug("Evicting a job event subscriber that fell {} events behind", bufferSize);
+                unregister.run();
+                senders.execute(emitter::complete);
+                return;
+            }
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                senders.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                JobEvent event;
+                while (!closed.get() && (event = buffer.poll()) != null) {
+                    emitter.send(SseEmitter.event().name("status").data(event));
+                    if (closeOnTerminal && event.isTerminal()) {
+                        unregister.run();
+                        emitter.complete();
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                // The client went away or the stream was already completed
+                unregister.run();
+            } finally {
+                draining.set(false);
+            }
+            // An event offered after the last poll but before the flag was cleared would otherwise wait for the next one
+            if (!closed.get() && !buffer.isEmpty()) {
+                scheduleDrain();
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
+import io.knav.pgjobqueue.advancedscheduler.entities.JobResult;
+import io.knav.pgjobqueue.advancedscheduler.entities.RetryPolicy;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Processes the jobs of one job type. Every JobHandler bean is picked up by JobHandlerRegistry and receives the
+ * claimed jobs whose job_type matches {@link #jobType()}.
+ * <p>
+ * A handler that can amortise its downstream I/O declares a {@link #maxBatchSize()} above one; the engine then
+ * hands it up to that many jobs per call, waiting at most {@link #maxBatchWait()} for a partial batch to fill.
+ * <p>
+ * Failed jobs are retried with the configured {@link RetryPolicy}; a handler can adjust it for its job type in
+ * {@link #retryPolicy(RetryPolicy)}.
+ * <p>
+ * A handler that is one stage of a pipeline names the job type of the following stage in {@link #nextStage()}:
+ * every job it completes continues as a job of that type with the same metadata. A handler can also hand back
+ * follow-up jobs of its own with {@link JobResult#success(java.util.UUID, List)}. Either way the follow-ups are
+ * enqueued in the statement that completes the job, and the ones this node has room for are already claimed.
+ */
+public interface JobHandler {
+
+    String jobType();
+
+    default int maxBatchSize() {
+        return 1;
+    }
+
+    default Duration maxBatchWait() {
+        return Duration.ZERO;
+    }
+
+    /**
+     * @param defaults the policy from the jobqueue.retry.* properties
+     */
+    default RetryPolicy retryPolicy(RetryPolicy defaults) {
+        return defaults;
+    }
+
+    /**
+     * @return the job type every completed job continues as, null if this handler ends its pipeline
+     */
+    default String nextStage() {
+        return null;
+    }
+
+    /**
+     * @return one result per job; a job without a result counts as failed, and so does every job of the batch if
+     * this throws
+     */
+    List<JobResult> handle(List<JobNg> jobs) throws Exception;
+}
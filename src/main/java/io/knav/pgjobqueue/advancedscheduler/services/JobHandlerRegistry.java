@@ -0,0 +1,74 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
+import io.knav.pgjobqueue.advancedscheduler.entities.JobResult;
+import io.knav.pgjobqueue.advancedscheduler.entities.RetryPolicy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Looks up the JobHandler bean and the retry policy for a job type. Jobs of a type nobody handles are failed, not
+ * left in processing, and retried with the default policy in case a handler shows up.
+ */
+@Service
+public class JobHandlerRegistry {
+
+    private final Map<String, JobHandler> handlers = new HashMap<>();
+    private final Map<String, RetryPolicy> retryPolicies = new HashMap<>();
+    private final RetryPolicy defaultRetryPolicy;
+
+    @Autowired
+    public JobHandlerRegistry(List<JobHandler> handlers,
+                              @Value("${jobqueue.retry.max-attempts:5}") int maxAttempts,
+                              @Value("${jobqueue.retry.initial-backoff-ms:1000}") long initialBackoffMs,
+                              @Value("${jobqueue.retry.max-backoff-ms:600000}") long maxBackoffMs) {
+
+        this.defaultRetryPolicy = new RetryPolicy(maxAttempts, Duration.ofMillis(initialBackoffMs), Duration.ofMillis(maxBackoffMs));
+        for (JobHandler handler : handlers) {
+            JobHandler previous = this.handlers.put(handler.jobType(), handler);
+            if (previous != null) {
+                throw new IllegalStateException("Two handlers for job type " + handler.jobType() + ": "
+                        + previous.getClass().getName() + " and " + handler.getClass().getName());
+            }
+            retryPolicies.put(handler.jobType(), handler.retryPolicy(defaultRetryPolicy));
+        }
+    }
+
+    public JobHandler handlerFor(String jobType) {
+        JobHandler handler = handlers.get(jobType);
+        return handler != null ? handler : new MissingHandler(jobType);
+    }
+
+    public RetryPolicy retryPolicyFor(String jobType) {
+        return retryPolicies.getOrDefault(jobType, defaultRetryPolicy);
+    }
+
+    public RetryPolicy defaultRetryPolicy() {
+        return defaultRetryPolicy;
+    }
+
+    /**
+     * @return the policy of every handled job type that differs from the default
+     */
+    public Map<String, RetryPolicy> retryPolicyOverrides() {
+        Map<String, RetryPolicy> overrides = new HashMap<>(retryPolicies);
+        overrides.values().removeIf(defaultRetryPolicy::equals);
+        return overrides;
+    }
+
+    private record MissingHandler(String jobType) implements JobHandler {
+
+        @Override
+        public List<JobResult> handle(List<JobNg> jobs) {
+            return jobs.stream()
+                    .map(job -> JobResult.failure(job.id(), "No handler for job type " + jobType))
+                    .toList();
+        }
+    }
+}
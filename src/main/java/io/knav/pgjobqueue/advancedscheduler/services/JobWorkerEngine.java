@@ -0,0 +1,499 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
+import io.knav.pgjobqueue.advancedscheduler.repositories.AdvancedJobRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+Replaces the fixed cron poll with a claim loop that keeps a bounded number of processing slots busy.
+
+The loop claims exactly as many jobs as there are free slots and goes straight back to the database
+while the backlog keeps filling them. Only when a claim comes back short does it park, until a slot
+frees up, someone calls wakeUp() or the idle poll interval passes.
+
+Delayed jobs are not polled for: after a short claim the loop looks up the earliest future run_at and
+arms DelayedJobTimer to wake it exactly then.
+
+Free slots are split across queues (tenants) by DeficitRoundRobin with the configured weights, so a
+queue with a huge backlog cannot starve the small ones. The list of queues with pending jobs is refreshed
+on wake-ups and at least every refresh interval.
+
+With jobqueue.sharding.enabled each node claims from the buckets ShardMembership assigns to it, so
+nodes start their scans in different index ranges, and steals from other buckets only when its own run dry.
+
+Claimed jobs are handed to the JobHandler of their job_type through a JobBatcher, so a handler that
+declares batch support gets many jobs per call while every job keeps its own slot, lease and ack.
+Every claimed batch is first shown to the ClaimListener beans, tagged with the ClaimPath it came by.
+
+The number of slots follows AdaptiveConcurrencyLimiter, fed with the claim latency and the Hikari
+pool saturation, so a node backs off before it starves its own connection pool.
+
+Every claimed job is tracked until its handler returns; on shutdown WorkerDrain drains the engine and
+releases whatever is left to the other nodes.
+ */
+@Service
+public class JobWorkerEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(JobWorkerEngine.class);
+
+    private final AdvancedJobRepository jobsRepository;
+    private final AdvancedJobService jobService;
+    private final LeaseHeartbeat leaseHeartbeat;
+    private final DelayedJobTimer delayedJobTimer;
+    private final ShardMembership shardMembership;
+    private final JobHandlerRegistry handlerRegistry;
+    private final List<ClaimListener> claimListeners;
+    private final Map<String, JobBatcher> batchers = new ConcurrentHashMap<>();
+    // Claimed jobs that have not finished, mapped to whether their handler has started
+    private final Map<UUID, Boolean> unfinishedJobs = new ConcurrentHashMap<>();
+    private final DataSource dataSource;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final boolean enabled;
+    private final boolean virtualThreads;
+    private final int maxConcurrency;
+    private final Duration idlePollInterval;
+    private final DeficitRoundRobin queueScheduler;
+    private final long queueRefreshIntervalNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotFreed = lock.newCondition();
+    private final Condition wakeUpSignal = lock.newCondition();
+    private int inFlight;
+    private boolean wakeUpRequested;
+    private long timedWakeUpMs = Long.MAX_VALUE;
+
+    private volatile boolean queuesStale = true;
+    private List<String> activeQueues = List.of();
+    private long queuesRefreshedAt;
+    private int bucketCursor;
+
+    private volatile boolean running;
+    private ExecutorService workers;
+    private Thread claimLoop;
+
+    @Autowired
+    public JobWorkerEngine(AdvancedJobRepository jobsRepository,
+                           AdvancedJobService jobService,
+                           LeaseHeartbeat leaseHeartbeat,
+                           DelayedJobTimer delayedJobTimer,
+                           ShardMembership shardMembership,
+                           JobHandlerRegistry handlerRegistry,
+                           ObjectProvider<ClaimListener> claimListeners,
+                           DataSource dataSource,
+                           MeterRegistry meterRegistry,
+                           @Value("${jobqueue.worker.enabled:true}") boolean enabled,
+                           @Value("${jobqueue.worker.min-concurrency:1}") int minConcurrency,
+                           @Value("${jobqueue.worker.max-concurrency:64}") int maxConcurrency,
+                           @Value("${jobqueue.worker.initial-concurrency:8}") int initialConcurrency,
+                           @Value("${jobqueue.worker.target-claim-latency-ms:50}") long targetClaimLatencyMs,
+                           @Value("${jobqueue.worker.idle-poll-interval-ms:10000}") long idlePollIntervalMs,
+                           @Value("${jobqueue.worker.virtual-threads:false}") boolean virtualThreads,
+                           @Value("${jobqueue.queues.weights:}") String queueWeights,
+                           @Value("${jobqueue.queues.default-weight:1}") int defaultQueueWeight,
+                           @Value("${jobqueue.queues.refresh-interval-ms:1000}") long queueRefreshIntervalMs) {
+
+        this.jobsRepository = jobsRepository;
+        this.jobService = jobService;
+        this.leaseHeartbeat = leaseHeartbeat;
+        this.delayedJobTimer = delayedJobTimer;
+        this.shardMembership = shardMembership;
+        this.handlerRegistry = handlerRegistry;
+        this.claimListeners = claimListeners.orderedStream().toList();
+        this.dataSource = dataSource;
+        this.enabled = enabled;
+        this.virtualThreads = virtualThreads;
+        this.maxConcurrency = maxConcurrency;
+        this.idlePollInterval = Duration.ofMillis(idlePollIntervalMs);
+        this.limiter = new AdaptiveConcurrencyLimiter(minConcurrency, maxConcurrency, initialConcurrency,
+                Duration.ofMillis(targetClaimLatencyMs));
+        this.queueScheduler = new DeficitRoundRobin(DeficitRoundRobin.parseWeights(queueWeights), defaultQueueWeight);
+        this.queueRefreshIntervalNanos = TimeUnit.MILLISECONDS.toNanos(queueRefreshIntervalMs);
+        Gauge.builder("jobqueue.worker.concurrency.limit", this, JobWorkerEngine::concurrencyLimit)
+                .description("Processing slots the adaptive limiter currently allows")
+                .register(meterRegistry);
+        Gauge.builder("jobqueue.worker.in.flight", this, JobWorkerEngine::inFlight)
+                .description("Processing slots in use")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        workers = newWorkerExecutor();
+        running = true;
+        claimLoop = new Thread(this::runClaimLoop, "job-claim-loop");
+        claimLoop.setDaemon(true);
+        claimLoop.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        drain(Duration.ofSeconds(30));
+        if (workers != null) {
+            // Handlers still running past the drain had their jobs released already
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Stops claiming and gives the handlers that are running up to {@code timeout} to finish. Batches that have not
+     * started yet are not started any more, neither are follow-ups chained to this node.
+     *
+     * @return the jobs claimed by this node that did not finish, mapped to whether their handler had started
+     */
+    public Map<UUID, Boolean> drain(Duration timeout) throws InterruptedException {
+        if (!running) {
+            return Map.of();
+        }
+        long deadline = System.nanoTime() + timeout.toNanos();
+        running = false;
+        claimLoop.interrupt();
+        // A claim already sent still hands its jobs over, they must be counted
+        claimLoop.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+        workers.shutdown();
+        if (!workers.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+            log.warn("Handlers still running after the drain timeout of {}", timeout);
+        }
+        return Map.copyOf(unfinishedJobs);
+    }
+
+    /**
+     * Makes the claim loop poll right away instead of waiting for the idle poll interval.
+     */
+    public void wakeUp() {
+        // New jobs may have arrived in a queue the loop does not know about yet
+        queuesStale = true;
+        lock.lock();
+        try {
+            wakeUpRequested = true;
+            wakeUpSignal.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Makes the claim loop poll once {@code at} has passed, for a delayed job becoming due.
+     * Only the earliest pending wake-up is kept: the claim it triggers looks up the next run_at again.
+     */
+    public void wakeUpAt(Instant at) {
+        if (!at.isAfter(Instant.now())) {
+            wakeUp();
+            return;
+        }
+        lock.lock();
+        try {
+            if (at.toEpochMilli() >= timedWakeUpMs) {
+                return;
+            }
+            timedWakeUpMs = at.toEpochMilli();
+        } finally {
+            lock.unlock();
+        }
+        delayedJobTimer.schedule(at, () -> {
+            lock.lock();
+            try {
+                if (timedWakeUpMs == at.toEpochMilli()) {
+                    timedWakeUpMs = Long.MAX_VALUE;
+                }
+            } finally {
+                lock.unlock();
+            }
+            wakeUp();
+        });
+    }
+
+    public int concurrencyLimit() {
+        return limiter.limit();
+    }
+
+    public int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reserves up to {@code wanted} processing slots without blocking.
+     * Every reserved slot must be handed back through {@link #execute(List, ClaimPath)} or {@link #releaseSlots(int)}.
+     *
+     * @return the number of slots reserved, 0 when the node is saturated
+     */
+    public int reserveSlots(int wanted) {
+        if (!running) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            int reserved = Math.max(0, Math.min(wanted, limiter.limit() - inFlight));
+            inFlight += reserved;
+            return reserved;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs already claimed jobs, one slot each, reserved through {@link #reserveSlots(int)}.
+     * Jobs go to the handler of their type, in batches when the handler supports them.
+     */
+    public void execute(List<JobNg> jobs, ClaimPath path) {
+        if (jobs.isEmpty()) {
+            return;
+        }
+        Map<String, List<JobNg>> byType = new LinkedHashMap<>();
+        for (JobNg job : jobs) {
+            unfinishedJobs.put(job.id(), false);
+            leaseHeartbeat.track(job.id());
+            byType.computeIfAbsent(job.jobType(), type -> new ArrayList<>()).add(job);
+        }
+        // Once tracked the jobs hold their slots until they finish, so a failing listener cannot leak them
+        for (ClaimListener listener : claimListeners) {
+            try {
+                listener.onClaimed(jobs, path);
+            } catch (RuntimeException e) {
+                log.warn("Claim listener {} failed: {}", listener.getClass().getName(), e.getMessage());
+            }
+        }
+        byType.forEach((type, typedJobs) -> batcher(type).add(typedJobs));
+    }
+
+    private JobBatcher batcher(String jobType) {
+        return batchers.computeIfAbsent(jobType, type -> {
+            JobHandler handler = handlerRegistry.handlerFor(type);
+            return new JobBatcher(handler, delayedJobTimer, batch -> runBatch(handler, batch));
+        });
+    }
+
+    private void runBatch(JobHandler handler, List<JobNg> batch) {
+        if (!running) {
+            // Draining: the batch stays unfinished and is released with the rest
+            return;
+        }
+        workers.execute(() -> {
+            if (!running) {
+                return;
+            }
+            batch.forEach(job -> unfinishedJobs.put(job.id(), true));
+            // The slots of the batch carry over to the follow-ups claimed for this node
+            List<JobNg> chained = List.of();
+            try {
+                chained = jobService.processJobs(handler, batch, running ? batch.size() : 0);
+            } finally {
+                batch.forEach(job -> {
+                    leaseHeartbeat.untrack(job.id());
+                    unfinishedJobs.remove(job.id());
+                });
+                releaseSlots(batch.size() - chained.size());
+            }
+            execute(chained, ClaimPath.CHAINED);
+        });
+    }
+
+    public void releaseSlots(int count) {
+        if (count <= 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            inFlight -= count;
+            slotFreed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void runClaimLoop() {
+        ClaimPath path = ClaimPath.POLL;
+        while (running) {
+            try {
+                int reserved = awaitAndReserveSlots();
+                long start = System.nanoTime();
+                int claimed = 0;
+                int claims = 0;
+                boolean moreQueued = false;
+                try {
+                    for (Map.Entry<String, Integer> share : queueScheduler.allocate(activeQueues(), reserved).entrySet()) {
+                        claims++;
+                        List<JobNg> jobs = claim(share.getKey(), share.getValue());
+                        claimed += jobs.size();
+                        moreQueued |= jobs.size() == share.getValue();
+                        execute(jobs, path);
+                    }
+                } finally {
+                    releaseSlots(reserved - claimed);
+                }
+                // The limiter targets the latency of one claim query, not of the whole round
+                Duration claimLatency = Duration.ofNanos((System.nanoTime() - start) / Math.max(1, claims));
+
+                boolean backlogFull = claimed == reserved;
+                limiter.onClaim(claimLatency, backlogFull, poolSaturation());
+
+                // A short claim from one queue is no reason to park while another still has jobs
+                if (moreQueued) {
+                    path = ClaimPath.POLL;
+                } else {
+                    queuesStale = true;
+                    scheduleNextDelayedJob();
+                    path = awaitWakeUp(jittered(idlePollInterval)) ? ClaimPath.NOTIFICATION : ClaimPath.POLL;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Claiming jobs failed: {}", e.getMessage());
+                try {
+                    awaitWakeUp(idlePollInterval);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    // With sharding, own buckets first and steal from the rest of the queue only what they could not fill
+    private List<JobNg> claim(String queueName, int limit) {
+        int[] owned = shardMembership.ownedBuckets();
+        if (!shardMembership.isEnabled() || owned.length == 0) {
+            return jobsRepository.fetchJobs(queueName, limit);
+        }
+        List<JobNg> jobs = jobsRepository.fetchJobs(queueName, rotate(owned), limit);
+        if (jobs.size() == limit) {
+            return jobs;
+        }
+        List<JobNg> stolen = jobsRepository.fetchJobs(queueName, limit - jobs.size());
+        if (stolen.isEmpty()) {
+            return jobs;
+        }
+        List<JobNg> all = new ArrayList<>(jobs);
+        all.addAll(stolen);
+        return all;
+    }
+
+    // Starts each claim at the next owned bucket so a deep bucket does not shadow the others
+    private int[] rotate(int[] buckets) {
+        int start = Math.floorMod(bucketCursor++, buckets.length);
+        int[] rotated = new int[buckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+            rotated[i] = buckets[(start + i) % buckets.length];
+        }
+        return rotated;
+    }
+
+    private List<String> activeQueues() {
+        if (queuesStale || System.nanoTime() - queuesRefreshedAt > queueRefreshIntervalNanos) {
+            queuesStale = false;
+            activeQueues = jobsRepository.findActiveQueues();
+            queuesRefreshedAt = System.nanoTime();
+        }
+        return activeQueues;
+    }
+
+    private void scheduleNextDelayedJob() {
+        Instant nextRunAt = jobsRepository.nextRunAt();
+        if (nextRunAt != null) {
+            wakeUpAt(nextRunAt);
+        }
+    }
+
+    private int awaitAndReserveSlots() throws InterruptedException {
+        lock.lock();
+        try {
+            while (inFlight >= limiter.limit()) {
+                slotFreed.await();
+            }
+            int reserved = limiter.limit() - inFlight;
+            inFlight += reserved;
+            return reserved;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // true when woken by wakeUp(), false when the timeout passed
+    private boolean awaitWakeUp(Duration timeout) throws InterruptedException {
+        lock.lock();
+        try {
+            long remaining = timeout.toNanos();
+            while (!wakeUpRequested && remaining > 0) {
+                remaining = wakeUpSignal.awaitNanos(remaining);
+            }
+            boolean signalled = wakeUpRequested;
+            wakeUpRequested = false;
+            return signalled;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Every node wakes up on the same notification; without jitter they would all poll again at the same moment
+    private static Duration jittered(Duration interval) {
+        long millis = interval.toMillis();
+        return Duration.ofMillis(millis / 2 + ThreadLocalRandom.current().nextLong(millis + 1));
+    }
+
+    private double poolSaturation() {
+        if (!(dataSource instanceof HikariDataSource hikari)) {
+            return 0;
+        }
+        HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+        if (pool == null) {
+            return 0;
+        }
+        if (pool.getThreadsAwaitingConnection() > 0) {
+            return 1;
+        }
+        return (double) pool.getActiveConnections() / hikari.getMaximumPoolSize();
+    }
+
+    private ExecutorService newWorkerExecutor() {
+        if (virtualThreads) {
+            try {
+                // Looked up reflectively so the project keeps building on Java 17.
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                log.warn("Virtual threads need Java 21, falling back to platform threads");
+            }
+        }
+        var executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new CustomizableThreadFactory("job-worker-"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
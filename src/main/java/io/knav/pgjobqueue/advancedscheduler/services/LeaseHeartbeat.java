@@ -0,0 +1,94 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import io.knav.pgjobqueue.advancedscheduler.repositories.AdvancedJobRepository;
+import io.knav.pgjobqueue.advancedscheduler.repositories.AsyncJobRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the leases of long-running jobs alive. Workers register a job when they start it and unregister it when
+ * they are done; every tick, all jobs whose lease would run out before the next two ticks get extended with a
+ * single update. Short jobs finish before they ever need one.
+ * With the async repository the update is sent without waiting and the deadlines move once it completes.
+ */
+@Service
+public class LeaseHeartbeat {
+
+    private static final Logger log = LoggerFactory.getLogger(LeaseHeartbeat.class);
+
+    private final AdvancedJobRepository jobsRepository;
+    private final AsyncJobRepository asyncRepository;
+    private final long leaseSeconds;
+    private final long renewWindowNanos;
+
+    // job id -> System.nanoTime() at which this node assumes the lease runs out
+    private final Map<UUID, Long> leaseDeadlines = new ConcurrentHashMap<>();
+
+    @Autowired
+    public LeaseHeartbeat(AdvancedJobRepository jobsRepository,
+                          Optional<AsyncJobRepository> asyncRepository,
+                          @Value("${jobqueue.lease.duration-seconds:900}") long leaseSeconds,
+                          @Value("${jobqueue.lease.heartbeat-interval-ms:60000}") long heartbeatIntervalMs) {
+
+        this.jobsRepository = jobsRepository;
+        this.asyncRepository = asyncRepository.orElse(null);
+        this.leaseSeconds = leaseSeconds;
+        this.renewWindowNanos = TimeUnit.MILLISECONDS.toNanos(2 * heartbeatIntervalMs);
+    }
+
+    /**
+     * Starts renewing the lease of a job that was just claimed.
+     */
+    public void track(UUID jobId) {
+        leaseDeadlines.put(jobId, System.nanoTime() + TimeUnit.SECONDS.toNanos(leaseSeconds));
+    }
+
+    public void untrack(UUID jobId) {
+        leaseDeadlines.remove(jobId);
+    }
+
+    @Scheduled(fixedDelayString = "${jobqueue.lease.heartbeat-interval-ms:60000}")
+    public void extendLeases() {
+        long now = System.nanoTime();
+        List<UUID> due = new ArrayList<>();
+        leaseDeadlines.forEach((jobId, deadline) -> {
+            if (deadline - now < renewWindowNanos) {
+                due.add(jobId);
+            }
+        });
+        if (due.isEmpty()) {
+            return;
+        }
+
+        long newDeadline = now + TimeUnit.SECONDS.toNanos(leaseSeconds);
+        if (asyncRepository != null) {
+            asyncRepository.extendLeases(due, leaseSeconds).whenComplete((extended, error) -> {
+                if (error != null) {
+                    log.warn("Extending {} leases failed, retrying on the next tick: {}", due.size(), error.getMessage());
+                } else {
+                    moveDeadlines(due, newDeadline);
+                }
+            });
+            return;
+        }
+        jobsRepository.extendLeases(due, leaseSeconds);
+        moveDeadlines(due, newDeadline);
+    }
+
+    private void moveDeadlines(List<UUID> jobIds, long newDeadline) {
+        // Jobs that finished meanwhile were untracked and must not come back
+        jobIds.forEach(jobId -> leaseDeadlines.computeIfPresent(jobId, (id, deadline) -> newDeadline));
+    }
+}
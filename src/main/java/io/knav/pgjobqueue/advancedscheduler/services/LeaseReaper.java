@@ -0,0 +1,54 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import io.knav.pgjobqueue.advancedscheduler.entities.RetryPolicy;
+import io.knav.pgjobqueue.advancedscheduler.repositories.AdvancedJobRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Hands jobs whose worker died mid-processing back to the queue once their lease has expired, after the backoff
+ * of their job type's retry policy, or dead-letters them when it is exhausted. A job that keeps crashing its
+ * worker thus ends up in archive_dead like one that keeps failing.
+ * The wake-up trigger on job_queue announces the released jobs like freshly inserted ones.
+ */
+@Component
+public class LeaseReaper {
+
+    private static final Logger log = LoggerFactory.getLogger(LeaseReaper.class);
+
+    private final AdvancedJobRepository jobsRepository;
+    private final JobHandlerRegistry handlerRegistry;
+    private final int batchSize;
+
+    @Autowired
+    public LeaseReaper(AdvancedJobRepository jobsRepository,
+                       JobHandlerRegistry handlerRegistry,
+                       @Value("${jobqueue.lease.reaper-batch-size:500}") int batchSize) {
+
+        this.jobsRepository = jobsRepository;
+        this.handlerRegistry = handlerRegistry;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${jobqueue.lease.reaper-interval-ms:30000}")
+    public void releaseExpiredLeases() {
+        RetryPolicy defaults = handlerRegistry.defaultRetryPolicy();
+        Map<String, RetryPolicy> overrides = handlerRegistry.retryPolicyOverrides();
+        int released;
+        int total = 0;
+        do {
+            released = jobsRepository.releaseExpiredLeases(batchSize, defaults, overrides);
+            total += released;
+        } while (released == batchSize);
+
+        if (total > 0) {
+            log.info("Released {} jobs with expired leases", total);
+        }
+    }
+}
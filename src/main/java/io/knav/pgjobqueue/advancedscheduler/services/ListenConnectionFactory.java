@@ -0,0 +1,59 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import com.github.jasync.sql.db.Configuration;
+import com.github.jasync.sql.db.postgresql.messages.backend.NotificationResponse;
+import com.github.jasync.sql.db.postgresql.util.URLParser;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Creates {@link ListenConnectionSupervisor}s for the configured database with the shared health-check and
+ * reconnect settings.
+ */
+@Component
+public class ListenConnectionFactory {
+
+    private final Configuration configuration;
+    private final MeterRegistry meterRegistry;
+    private final long healthCheckIntervalMs;
+    private final long healthCheckTimeoutMs;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+
+    @Autowired
+    public ListenConnectionFactory(@Value("${spring.datasource.url}") String url,
+                                   @Value("${spring.datasource.username}") String username,
+                                   @Value("${spring.datasource.password}") String password,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${jobqueue.listen.health-check-interval-ms:5000}") long healthCheckIntervalMs,
+                                   @Value("${jobqueue.listen.health-check-timeout-ms:2000}") long healthCheckTimeoutMs,
+                                   @Value("${jobqueue.listen.reconnect-initial-backoff-ms:100}") long initialBackoffMs,
+                                   @Value("${jobqueue.listen.reconnect-max-backoff-ms:30000}") long maxBackoffMs) {
+
+        String connectionUrl = String.format("%s?user=%s&password=%s", url, username, password);
+        this.configuration = URLParser.INSTANCE.parseOrDie(connectionUrl, Charset.defaultCharset());
+        this.meterRegistry = meterRegistry;
+        this.healthCheckIntervalMs = healthCheckIntervalMs;
+        this.healthCheckTimeoutMs = healthCheckTimeoutMs;
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+    }
+
+    /**
+     * @param name        tags the connection metrics and names the supervisor thread
+     * @param listener    called on the jasync I/O thread for every notification, must not block
+     * @param onListening called on the supervisor thread after every successful LISTEN, must not block
+     */
+    public ListenConnectionSupervisor supervise(String name, List<String> channels,
+                                                Consumer<NotificationResponse> listener, Runnable onListening) {
+        return new ListenConnectionSupervisor(name, () -> ListenConnectionSupervisor.ListenConnection.of(configuration),
+                channels, listener, onListening,
+                healthCheckIntervalMs, healthCheckTimeoutMs, initialBackoffMs, maxBackoffMs, meterRegistry);
+    }
+}
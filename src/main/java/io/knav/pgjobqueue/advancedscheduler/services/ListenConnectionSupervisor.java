@@ -0,0 +1,274 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import com.github.jasync.sql.db.Configuration;
+import com.github.jasync.sql.db.postgresql.PostgreSQLConnection;
+import com.github.jasync.sql.db.postgresql.messages.backend.NotificationResponse;
+import io.knav.pgjobqueue.advancedscheduler.entities.Backoff;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/*
+Keeps one LISTEN connection alive for as long as the application runs.
+
+A single supervisor thread owns the connection. Every health-check interval it checks that the connection is
+still open and answers a trivial query within the timeout; when it does not, or the first connect fails, the
+connection is thrown away and a new one is opened after a jittered exponential backoff, which re-issues
+LISTEN for every channel. Each successful LISTEN runs the onListening callback, so the owner can sweep up
+whatever was notified while no one was listening.
+
+Every connection attempt gets a new generation number; callbacks of an older connection are ignored, so a
+late failure of a dead connection cannot tear down its replacement.
+
+stop() closes the connection on the supervisor thread as well and waits for it. A connect that completes after
+that finds the supervisor shut down and closes its own connection.
+ */
+public class ListenConnectionSupervisor {
+
+    private static final Logger log = LoggerFactory.getLogger(ListenConnectionSupervisor.class);
+
+    public enum State {DISCONNECTED, CONNECTING, LISTENING}
+
+    /**
+     * The parts of a jasync {@link PostgreSQLConnection} the supervisor uses.
+     */
+    interface ListenConnection {
+
+        /**
+         * Opens the connection; {@code listener} gets its notifications on the jasync I/O thread.
+         */
+        CompletableFuture<?> connect(Consumer<NotificationResponse> listener);
+
+        CompletableFuture<?> sendQuery(String query);
+
+        boolean isConnected();
+
+        void disconnect();
+
+        static ListenConnection of(Configuration configuration) {
+            PostgreSQLConnection connection = new PostgreSQLConnection(configuration);
+            return new ListenConnection() {
+                @Override
+                public CompletableFuture<?> connect(Consumer<NotificationResponse> listener) {
+                    return connection.connect().thenAccept(connected -> connected.registerNotifyListener(notification -> {
+                        listener.accept(notification);
+                        return null;
+                    }));
+                }
+
+                @Override
+                public CompletableFuture<?> sendQuery(String query) {
+                    return connection.sendQuery(query);
+                }
+
+                @Override
+                public boolean isConnected() {
+                    return connection.isConnected();
+                }
+
+                @Override
+                public void disconnect() {
+                    connection.disconnect();
+                }
+            };
+        }
+    }
+
+    private static final long STOP_TIMEOUT_MS = 5000;
+
+    private final String name;
+    private final Supplier<ListenConnection> connections;
+    private final List<String> channels;
+    private final Consumer<NotificationResponse> listener;
+    private final Runnable onListening;
+    private final long healthCheckIntervalMs;
+    private final long healthCheckTimeoutMs;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+    private final ScheduledThreadPoolExecutor supervisor;
+    private final AtomicReference<State> state = new AtomicReference<>(State.DISCONNECTED);
+    private final Counter reconnects;
+
+    // Only touched on the supervisor thread
+    private ListenConnection connection;
+    private long generation;
+    private int failedAttempts;
+    private boolean everListened;
+
+    private volatile boolean running;
+
+    ListenConnectionSupervisor(String name, Supplier<ListenConnection> connections, List<String> channels,
+                               Consumer<NotificationResponse> listener, Runnable onListening,
+                               long healthCheckIntervalMs, long healthCheckTimeoutMs,
+                               long initialBackoffMs, long maxBackoffMs, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.connections = connections;
+        this.channels = List.copyOf(channels);
+        this.listener = listener;
+        this.onListening = onListening;
+        this.healthCheckIntervalMs = healthCheckIntervalMs;
+        this.healthCheckTimeoutMs = healthCheckTimeoutMs;
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.supervisor = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("listen-supervisor-" + name + "-"));
+        // A pending reconnect must not hold up stop()
+        this.supervisor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        Gauge.builder("jobqueue.listen.connected", state, s -> s.get() == State.LISTENING ? 1 : 0)
+                .description("1 while the LISTEN connection is up and listening")
+                .tag("listener", name)
+                .register(meterRegistry);
+        this.reconnects = Counter.builder("jobqueue.listen.reconnects")
+                .description("LISTEN connections re-established after a loss")
+                .tag("listener", name)
+                .register(meterRegistry);
+    }
+
+    public void start() {
+        running = true;
+        onSupervisor(this::connect, 0);
+        supervisor.scheduleWithFixedDelay(this::checkHealth, healthCheckIntervalMs, healthCheckIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        running = false;
+        onSupervisor(this::disconnect, 0);
+        supervisor.shutdown();
+        try {
+            if (!supervisor.awaitTermination(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                log.warn("LISTEN supervisor {} did not stop within {} ms", name, STOP_TIMEOUT_MS);
+                supervisor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            supervisor.shutdownNow();
+        }
+        state.set(State.DISCONNECTED);
+    }
+
+    public State state() {
+        return state.get();
+    }
+
+    private void connect() {
+        if (!running) {
+            return;
+        }
+        long attempt = ++generation;
+        state.set(State.CONNECTING);
+        ListenConnection candidate = connections.get();
+        connection = candidate;
+        candidate.connect(listener)
+                .thenCompose(connected -> listenAll(candidate))
+                .whenComplete((result, error) -> {
+                    if (!onSupervisor(() -> onConnected(attempt, candidate, error), 0)) {
+                        // Stopped while connecting
+                        candidate.disconnect();
+                    }
+                });
+    }
+
+    private CompletableFuture<?> listenAll(ListenConnection connected) {
+        CompletableFuture<?> listening = CompletableFuture.completedFuture(null);
+        for (String channel : channels) {
+            listening = listening.thenCompose(previous -> connected.sendQuery("LISTEN " + channel));
+        }
+        return listening;
+    }
+
+    private void onConnected(long attempt, ListenConnection candidate, Throwable error) {
+        if (!running || attempt != generation) {
+            // Already dropped, but the connect may have completed after the disconnect
+            candidate.disconnect();
+            return;
+        }
+        if (error != null) {
+            log.warn("LISTEN connection {} could not be established: {}", name, error.getMessage());
+            reconnectLater();
+            return;
+        }
+        if (everListened) {
+            reconnects.increment();
+        }
+        everListened = true;
+        failedAttempts = 0;
+        state.set(State.LISTENING);
+        log.info("Listening on channels {} ({})", channels, name);
+        try {
+            onListening.run();
+        } catch (RuntimeException e) {
+            log.warn("Catch-up after LISTEN on {} failed: {}", name, e.getMessage());
+        }
+    }
+
+    private void checkHealth() {
+        if (state.get() != State.LISTENING) {
+            return;
+        }
+        long attempt = generation;
+        ListenConnection current = connection;
+        if (!current.isConnected()) {
+            lost(attempt, "connection closed");
+            return;
+        }
+        current.sendQuery("SELECT 1")
+                .orTimeout(healthCheckTimeoutMs, TimeUnit.MILLISECONDS)
+                .whenComplete((result, error) -> {
+                    if (error != null) {
+                        onSupervisor(() -> lost(attempt, "health check failed: " + error), 0);
+                    }
+                });
+    }
+
+    private void lost(long attempt, String reason) {
+        if (!running || attempt != generation || state.get() != State.LISTENING) {
+            return;
+        }
+        log.warn("LISTEN connection {} lost, {}; reconnecting", name, reason);
+        reconnectLater();
+    }
+
+    private void reconnectLater() {
+        disconnect();
+        // The jitter keeps the nodes of a cluster from reconnecting in lockstep after a failover
+        long delay = Backoff.jitteredMs(failedAttempts++, initialBackoffMs, maxBackoffMs);
+        onSupervisor(this::connect, delay);
+    }
+
+    private void disconnect() {
+        // Invalidates every pending callback of the connection being dropped
+        generation++;
+        state.set(State.DISCONNECTED);
+        ListenConnection dropped = connection;
+        connection = null;
+        if (dropped != null) {
+            dropped.disconnect();
+        }
+    }
+
+    /**
+     * Runs {@code task} on the supervisor thread after {@code delayMs}, unless stop() already shut it down; jasync
+     * callbacks can arrive after that.
+     *
+     * @return false if the task was rejected
+     */
+    private boolean onSupervisor(Runnable task, long delayMs) {
+        try {
+            supervisor.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+}
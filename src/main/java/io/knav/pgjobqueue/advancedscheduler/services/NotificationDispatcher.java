@@ -0,0 +1,177 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
+import io.knav.pgjobqueue.advancedscheduler.repositories.AdvancedJobRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Sits between the LISTEN connection and the worker pool.
+
+The notify listener runs on the jasync event loop, so it only offers the raw payload to a bounded
+queue and returns. A single dispatcher thread drains that queue, waits a few milliseconds for the
+rest of a burst to arrive, and claims all collected ids with one batched SELECT ... FOR UPDATE SKIP LOCKED.
+
+Backpressure: when the queue is full or the worker pool has no free slots, notifications are dropped
+and the claim loop is woken up instead. Nothing is lost, the jobs are still pending in job_queue and
+the claim loop picks them up as soon as slots free up.
+
+Only used with jobqueue.notify.mode=row; in wakeup mode the dispatcher thread is never started.
+ */
+@Service
+public class NotificationDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+    private final AdvancedJobRepository jobsRepository;
+    private final JobWorkerEngine workerEngine;
+    private final BlockingQueue<String> payloads;
+    private final int maxBatchSize;
+    private final long coalesceWindowNanos;
+    private final NotificationPayloads notificationPayloads;
+    private final AtomicLong droppedNotifications = new AtomicLong();
+    private final boolean rowMode;
+
+    private volatile boolean running;
+    private Thread dispatcherThread;
+
+    @Autowired
+    public NotificationDispatcher(AdvancedJobRepository jobsRepository,
+                                  JobWorkerEngine workerEngine,
+                                  NotificationPayloads notificationPayloads,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${jobqueue.dispatch.queue-capacity:10000}") int queueCapacity,
+                                  @Value("${jobqueue.dispatch.max-batch-size:100}") int maxBatchSize,
+                                  @Value("${jobqueue.dispatch.coalesce-window-ms:5}") long coalesceWindowMs,
+                                  @Value("${jobqueue.notify.mode:wakeup}") String notifyMode) {
+
+        this.jobsRepository = jobsRepository;
+        this.workerEngine = workerEngine;
+        this.notificationPayloads = notificationPayloads;
+        this.payloads = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatchSize = maxBatchSize;
+        this.coalesceWindowNanos = TimeUnit.MILLISECONDS.toNanos(coalesceWindowMs);
+        this.rowMode = "row".equalsIgnoreCase(notifyMode);
+        FunctionCounter.builder("jobqueue.notifications.dropped", droppedNotifications, AtomicLong::get)
+                .description("Notified jobs left to the claim loop because the dispatch queue or the workers were full")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!rowMode) {
+            return;
+        }
+        running = true;
+        dispatcherThread = new Thread(this::runDispatchLoop, "job-notification-dispatcher");
+        dispatcherThread.setDaemon(true);
+        dispatcherThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (dispatcherThread == null) {
+            return;
+        }
+        running = false;
+        dispatcherThread.interrupt();
+        // A dispatch in progress still hands its claimed jobs to the engine
+        dispatcherThread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    /**
+     * Hands a notification payload to the dispatcher. Never blocks, so it is safe to call from the
+     * jasync I/O thread.
+     *
+     * @return false if the payload was dropped because the dispatch queue is full
+     */
+    public boolean offer(String payload) {
+        if (payloads.offer(payload)) {
+            return true;
+        }
+        droppedNotifications.incrementAndGet();
+        workerEngine.wakeUp();
+        return false;
+    }
+
+    public long droppedNotifications() {
+        return droppedNotifications.get();
+    }
+
+    private void runDispatchLoop() {
+        List<String> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                batch.add(payloads.take());
+                collectBurst(batch);
+                dispatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Dispatching notifications failed: {}", e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void collectBurst(List<String> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + coalesceWindowNanos;
+        while (batch.size() < maxBatchSize) {
+            payloads.drainTo(batch, maxBatchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= maxBatchSize || remaining <= 0) {
+                return;
+            }
+            String next = payloads.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void dispatch(List<String> batch) {
+        Set<UUID> ids = notificationPayloads.jobIds(batch);
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        int reserved = workerEngine.reserveSlots(ids.size());
+        if (reserved < ids.size()) {
+            // Pool is full: leave the rest pending for the claim loop.
+            droppedNotifications.addAndGet(ids.size() - reserved);
+            workerEngine.wakeUp();
+        }
+        if (reserved == 0) {
+            return;
+        }
+
+        List<JobNg> jobs;
+        try {
+            jobs = jobsRepository.fetchAndLockJobsForProcessing(ids, reserved);
+        } catch (RuntimeException e) {
+            workerEngine.releaseSlots(reserved);
+            throw e;
+        }
+        workerEngine.execute(jobs, ClaimPath.NOTIFICATION);
+        workerEngine.releaseSlots(reserved - jobs.size());
+    }
+}
@@ -0,0 +1,105 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.knav.pgjobqueue.advancedscheduler.entities.JobEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Parses the payloads of the notification channels with one shared, thread-safe reader.
+ */
+@Component
+public class NotificationPayloads {
+
+    private static final Logger log = LoggerFactory.getLogger(NotificationPayloads.class);
+
+    /**
+     * A job_queue_wakeup payload.
+     *
+     * @param count     jobs that became claimable
+     * @param nextRunAt when the earliest delayed job of the statement becomes due, null if there is none
+     */
+    public record WakeUpSignal(String queue, int count, Instant nextRunAt) {}
+
+    private final ObjectReader reader;
+
+    @Autowired
+    public NotificationPayloads(ObjectMapper objectMapper) {
+        this.reader = objectMapper.reader();
+    }
+
+    /**
+     * @return the job id of a job_queue_rows payload, null if it has none or is malformed
+     */
+    public UUID jobId(String payload) {
+        try {
+            JsonNode id = reader.readTree(payload).path("id");
+            return id.isMissingNode() ? null : UUID.fromString(id.asText());
+        } catch (Exception e) {
+            log.warn("Ignoring malformed notification payload: {}", payload);
+            return null;
+        }
+    }
+
+    /**
+     * @return the distinct job ids of a burst of job_queue_rows payloads, in arrival order
+     */
+    public Set<UUID> jobIds(Collection<String> payloads) {
+        Set<UUID> ids = new LinkedHashSet<>();
+        for (String payload : payloads) {
+            UUID id = jobId(payload);
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * @return the parsed job_queue_wakeup payload, null if it is malformed
+     */
+    public WakeUpSignal wakeUpSignal(String payload) {
+        try {
+            JsonNode signal = reader.readTree(payload);
+            JsonNode nextRunAt = signal.path("next_run_at");
+            return new WakeUpSignal(signal.path("queue").asText(null), signal.path("count").asInt(1),
+                    nextRunAt.isNumber() ? Instant.ofEpochMilli(nextRunAt.asLong()) : null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the events of a job_status_events payload, one per job id, empty if the payload is malformed
+     */
+    public List<JobEvent> jobEvents(String payload) {
+        try {
+            JsonNode event = reader.readTree(payload);
+            List<JobEvent> events = new ArrayList<>();
+            JsonNode ids = event.path("ids");
+            if (ids.isArray()) {
+                String queue = event.path("queue").asText(null);
+                String status = event.path("status").asText(null);
+                for (JsonNode id : ids) {
+                    events.add(new JobEvent(UUID.fromString(id.asText()), queue, status));
+                }
+            }
+            return events;
+        } catch (Exception e) {
+            log.warn("Ignoring malformed job event payload: {}", payload);
+            return List.of();
+        }
+    }
+}
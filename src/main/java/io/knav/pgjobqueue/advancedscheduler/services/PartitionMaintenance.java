@@ -0,0 +1,52 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import io.knav.pgjobqueue.advancedscheduler.repositories.AdvancedJobRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Keeps the partitioned job_queue layout in shape: daily partitions are created ahead of time, and old partitions
+ * whose jobs are all terminal are dropped as a whole instead of being deleted row by row. Jobs enqueued while this
+ * falls behind land in the DEFAULT partition and move to their day's partition once it is created. Needs the
+ * Liquibase context 'partitioned', which can only be chosen on a fresh install.
+ */
+@Component
+@ConditionalOnProperty(name = "jobqueue.partitioning.enabled", havingValue = "true")
+public class PartitionMaintenance {
+
+    private static final Logger log = LoggerFactory.getLogger(PartitionMaintenance.class);
+
+    private final AdvancedJobRepository jobsRepository;
+    private final int precreateDays;
+    private final int retentionDays;
+
+    @Autowired
+    public PartitionMaintenance(AdvancedJobRepository jobsRepository,
+                                @Value("${jobqueue.partitioning.precreate-days:7}") int precreateDays,
+                                @Value("${jobqueue.partitioning.retention-days:7}") int retentionDays) {
+
+        this.jobsRepository = jobsRepository;
+        this.precreateDays = precreateDays;
+        this.retentionDays = retentionDays;
+    }
+
+    @Scheduled(fixedDelayString = "${jobqueue.partitioning.maintenance-interval-ms:3600000}")
+    public void maintainPartitions() {
+        int created = jobsRepository.createPartitions(precreateDays);
+        if (created > 0) {
+            log.info("Created {} job_queue partitions", created);
+        }
+
+        List<String> dropped = jobsRepository.dropExpiredPartitions(retentionDays);
+        if (!dropped.isEmpty()) {
+            log.info("Dropped expired job_queue partitions {}", dropped);
+        }
+    }
+}
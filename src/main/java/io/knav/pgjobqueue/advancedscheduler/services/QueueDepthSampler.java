@@ -0,0 +1,67 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import io.knav.pgjobqueue.advancedscheduler.repositories.AdvancedJobRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Publishes the number of jobs per status as the jobqueue.queue.depth gauge.
+
+Scrapes only read the last sample; the database is asked once per sample interval. Pending and processing
+are counted exactly up to a cap through their partial indexes, every other status comes from the planner
+statistics, so a sample never scans the completed jobs that make up most of job_queue.
+ */
+@Service
+public class QueueDepthSampler {
+
+    private static final Logger log = LoggerFactory.getLogger(QueueDepthSampler.class);
+
+    private final AdvancedJobRepository jobsRepository;
+    private final MeterRegistry meterRegistry;
+    private final int countCap;
+    private final Map<String, AtomicLong> depths = new ConcurrentHashMap<>();
+
+    @Autowired
+    public QueueDepthSampler(AdvancedJobRepository jobsRepository,
+                             MeterRegistry meterRegistry,
+                             @Value("${jobqueue.metrics.depth-count-cap:100000}") int countCap) {
+
+        this.jobsRepository = jobsRepository;
+        this.meterRegistry = meterRegistry;
+        this.countCap = countCap;
+    }
+
+    @Scheduled(fixedDelayString = "${jobqueue.metrics.depth-interval-ms:15000}")
+    public void sample() {
+        try {
+            Map<String, Long> estimates = jobsRepository.estimateJobsByStatus();
+            estimates.putAll(jobsRepository.countActiveJobs(countCap));
+            estimates.forEach((status, jobs) -> depth(status).set(jobs));
+        } catch (DataAccessException e) {
+            log.warn("Sampling queue depth failed: {}", e.getMessage());
+        }
+    }
+
+    private AtomicLong depth(String status) {
+        return depths.computeIfAbsent(status, s -> {
+            AtomicLong depth = new AtomicLong();
+            Gauge.builder("jobqueue.queue.depth", depth, AtomicLong::get)
+                    .description("Jobs per status; pending and processing exact up to the count cap, others estimated")
+                    .tag("status", s)
+                    .baseUnit("jobs")
+                    .register(meterRegistry);
+            return depth;
+        });
+    }
+}
@@ -0,0 +1,91 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import io.knav.pgjobqueue.advancedscheduler.repositories.AdvancedJobRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+/*
+Divides the claim buckets of job_queue among the live worker nodes.
+
+Every node heartbeats into job_queue_workers; the live nodes, sorted by id, split the buckets round-robin,
+so ownership rebalances by itself within one member TTL when nodes join or leave. Ownership is only a
+preference: claims still use SKIP LOCKED, so two nodes briefly owning the same bucket during a rebalance
+just contend like they did before sharding.
+
+The heartbeat must run well within the TTL, or the other nodes drop this one and take its buckets. It shares
+the scheduling pool with the other @Scheduled tasks, which spring.task.scheduling.pool.size keeps from
+queueing behind them.
+ */
+@Service
+public class ShardMembership {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardMembership.class);
+
+    // Must match the modulus of the generated job_queue.bucket column
+    public static final int BUCKET_COUNT = 64;
+
+    private final AdvancedJobRepository jobsRepository;
+    private final boolean enabled;
+    private final String workerId;
+    private final long memberTtlSeconds;
+
+    private volatile int[] ownedBuckets = new int[0];
+
+    @Autowired
+    public ShardMembership(AdvancedJobRepository jobsRepository,
+                           @Value("${jobqueue.sharding.enabled:false}") boolean enabled,
+                           @Value("${jobqueue.sharding.member-ttl-seconds:30}") long memberTtlSeconds) {
+
+        this.jobsRepository = jobsRepository;
+        this.enabled = enabled;
+        this.memberTtlSeconds = memberTtlSeconds;
+        this.workerId = ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the buckets this node claims from first, empty until the first heartbeat or when sharding is off
+     */
+    public int[] ownedBuckets() {
+        return ownedBuckets;
+    }
+
+    @Scheduled(fixedDelayString = "${jobqueue.sharding.heartbeat-interval-ms:5000}")
+    public void heartbeat() {
+        if (!enabled) {
+            return;
+        }
+        List<String> members = jobsRepository.heartbeatWorker(workerId, memberTtlSeconds);
+        int index = members.indexOf(workerId);
+        int memberCount = members.size();
+        int[] buckets = IntStream.range(0, BUCKET_COUNT)
+                .filter(bucket -> bucket % memberCount == index)
+                .toArray();
+        if (buckets.length != ownedBuckets.length) {
+            log.info("Worker {} owns {} of {} claim buckets, {} live workers", workerId, buckets.length, BUCKET_COUNT,
+                    memberCount);
+        }
+        ownedBuckets = buckets;
+    }
+
+    @PreDestroy
+    public void leave() {
+        if (enabled) {
+            // Lets the remaining nodes take over our buckets on their next heartbeat instead of after the TTL
+            jobsRepository.removeWorker(workerId);
+        }
+    }
+}
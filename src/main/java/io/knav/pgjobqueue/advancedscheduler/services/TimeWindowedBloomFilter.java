@@ -0,0 +1,129 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over the keys added during roughly the last window: keys go into the current generation, lookups
+ * check the current and the previous one, and once a window has passed the previous generation is dropped. A key
+ * is therefore remembered for at least one and at most two windows, and the memory stays fixed however many keys
+ * go through.
+ * <p>
+ * {@link #mightContain(String, long)} never misses a key added within the last window; it reports a key it has
+ * not seen with about the configured false positive rate, as long as a window holds no more than the expected
+ * number of keys. Thread-safe; callers pass the clock so tests can drive it.
+ */
+class TimeWindowedBloomFilter {
+
+    private final long windowMs;
+    private final int bits;
+    private final int hashes;
+
+    private volatile Generation current;
+    private volatile Generation previous;
+
+    /**
+     * @param expectedKeys      keys added per window the false positive rate is sized for
+     * @param falsePositiveRate wanted rate of {@code mightContain} answering true for a key never added
+     */
+    TimeWindowedBloomFilter(long windowMs, int expectedKeys, double falsePositiveRate, long startMs) {
+        if (windowMs < 1 || expectedKeys < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Invalid Bloom filter: window=" + windowMs + "ms, keys=" + expectedKeys
+                    + ", fpp=" + falsePositiveRate);
+        }
+        this.windowMs = windowMs;
+        long optimalBits = (long) Math.ceil(-expectedKeys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bits = (int) Math.min(Math.max(optimalBits, 64), Integer.MAX_VALUE - 63);
+        this.hashes = Math.max(1, (int) Math.round((double) bits / expectedKeys * Math.log(2)));
+        this.current = new Generation(startMs, bits);
+        this.previous = new Generation(startMs - windowMs, bits);
+    }
+
+    boolean mightContain(String key, long nowMs) {
+        rotateIfDue(nowMs);
+        long hash = hash(key);
+        return current.contains(hash, hashes, bits) || previous.contains(hash, hashes, bits);
+    }
+
+    void add(String key, long nowMs) {
+        rotateIfDue(nowMs);
+        current.add(hash(key), hashes, bits);
+    }
+
+    int bits() {
+        return bits;
+    }
+
+    int hashes() {
+        return hashes;
+    }
+
+    private void rotateIfDue(long nowMs) {
+        if (nowMs - current.startMs < windowMs) {
+            return;
+        }
+        synchronized (this) {
+            Generation started = current;
+            if (nowMs - started.startMs < windowMs) {
+                return;
+            }
+            // Generations start on window boundaries, so a key is never kept longer than two windows
+            long startMs = nowMs - (nowMs - started.startMs) % windowMs;
+            // After more than two windows of silence both generations are stale
+            previous = startMs - started.startMs == windowMs ? started : new Generation(startMs - windowMs, bits);
+            current = new Generation(startMs, bits);
+        }
+    }
+
+    // 64-bit FNV-1a over the chars, finished with the murmur3 mixer so both 32-bit halves are usable
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static final class Generation {
+
+        private final long startMs;
+        private final AtomicLongArray words;
+
+        private Generation(long startMs, int bits) {
+            this.startMs = startMs;
+            this.words = new AtomicLongArray((bits + 63) / 64);
+        }
+
+        // Double hashing: bit i of the key is h1 + i * h2
+        private void add(long hash, int hashes, int bits) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashes; i++) {
+                int bit = Math.floorMod(h1 + i * h2, bits);
+                long mask = 1L << bit;
+                int word = bit >>> 6;
+                long value;
+                while (((value = words.get(word)) & mask) == 0 && !words.compareAndSet(word, value, value | mask)) {
+                    // Another thread changed the word, retry with its value
+                }
+            }
+        }
+
+        private boolean contains(long hash, int hashes, int bits) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashes; i++) {
+                int bit = Math.floorMod(h1 + i * h2, bits);
+                if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
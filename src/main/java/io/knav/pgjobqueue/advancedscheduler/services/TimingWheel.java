@@ -0,0 +1,123 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel: O(1) insertion of timer tasks with a resolution of one tick.
+ * Tasks too far in the future go to an overflow wheel whose tick is this wheel's full interval,
+ * and are cascaded down into finer wheels as the clock approaches them.
+ * <p>
+ * The wheel has no thread of its own and is not thread-safe: the owner advances the clock and runs
+ * whatever comes back expired.
+ */
+class TimingWheel {
+
+    private record Entry(long expirationMs, Runnable task) {}
+
+    private static final long UNSET = -1;
+
+    private final long tickMs;
+    private final int wheelSize;
+    private final long interval;
+    private final List<List<Entry>> buckets;
+    private final long[] bucketExpirations;
+
+    private long currentTime;
+    private TimingWheel overflowWheel;
+
+    TimingWheel(long tickMs, int wheelSize, long startMs) {
+        if (tickMs < 1 || wheelSize < 2) {
+            throw new IllegalArgumentException("Invalid timing wheel: tick=" + tickMs + "ms, size=" + wheelSize);
+        }
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.interval = tickMs * wheelSize;
+        this.currentTime = startMs - (startMs % tickMs);
+        this.buckets = new ArrayList<>(wheelSize);
+        this.bucketExpirations = new long[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets.add(new ArrayList<>());
+            bucketExpirations[i] = UNSET;
+        }
+    }
+
+    /**
+     * @return false if the task is already due within the current tick, the caller has to run it
+     */
+    boolean add(long expirationMs, Runnable task) {
+        return add(new Entry(expirationMs, task));
+    }
+
+    /**
+     * Moves the clock forward to {@code nowMs}.
+     *
+     * @return the tasks that expired, in no particular order
+     */
+    List<Runnable> advanceClock(long nowMs) {
+        List<Entry> drained = new ArrayList<>();
+        advance(nowMs, drained);
+        List<Runnable> expired = new ArrayList<>();
+        for (Entry entry : drained) {
+            // Entries from an overflow wheel land in a finer bucket unless they are due by now
+            if (!add(entry)) {
+                expired.add(entry.task());
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * @return the earliest time at which {@link #advanceClock(long)} has work to do, Long.MAX_VALUE when empty
+     */
+    long nextExpiration() {
+        long next = Long.MAX_VALUE;
+        for (long expiration : bucketExpirations) {
+            if (expiration != UNSET) {
+                next = Math.min(next, expiration);
+            }
+        }
+        if (overflowWheel != null) {
+            next = Math.min(next, overflowWheel.nextExpiration());
+        }
+        return next;
+    }
+
+    private boolean add(Entry entry) {
+        long expiration = entry.expirationMs();
+        if (expiration < currentTime + tickMs) {
+            return false;
+        }
+        if (expiration < currentTime + interval) {
+            long virtualId = expiration / tickMs;
+            int slot = (int) (virtualId % wheelSize);
+            buckets.get(slot).add(entry);
+            bucketExpirations[slot] = virtualId * tickMs;
+            return true;
+        }
+        if (overflowWheel == null) {
+            overflowWheel = new TimingWheel(interval, wheelSize, currentTime);
+        }
+        return overflowWheel.add(entry);
+    }
+
+    private void advance(long nowMs, List<Entry> drained) {
+        if (nowMs < currentTime + tickMs) {
+            return;
+        }
+        long ticks = (nowMs - currentTime) / tickMs;
+        long firstVirtualId = currentTime / tickMs + 1;
+        for (long i = 0; i < Math.min(ticks, wheelSize); i++) {
+            int slot = (int) ((firstVirtualId + i) % wheelSize);
+            if (bucketExpirations[slot] != UNSET && bucketExpirations[slot] <= nowMs) {
+                drained.addAll(buckets.get(slot));
+                buckets.get(slot).clear();
+                bucketExpirations[slot] = UNSET;
+            }
+        }
+        currentTime = nowMs - (nowMs % tickMs);
+        if (overflowWheel != null) {
+            overflowWheel.advance(nowMs, drained);
+        }
+    }
+}
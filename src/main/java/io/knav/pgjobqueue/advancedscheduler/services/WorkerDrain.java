@@ -0,0 +1,105 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import io.knav.pgjobqueue.advancedscheduler.repositories.AdvancedJobRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/*
+Hands this node's jobs over to the rest of the cluster when the application shuts down.
+
+Runs as a SmartLifecycle, so it stops before any bean is destroyed, while the pools and the ack buffer still work:
+  1. stop listening for notifications and finish the dispatch in progress, so no claim comes in by notification
+  2. stop the claim loop and give running handlers up to drain-timeout to finish
+  3. move every job claimed here that did not finish, never started or still running, back to archive_pending
+     with one update
+
+The update's wake-up notification makes the surviving nodes claim the jobs right away, instead of after their
+lease expires. Outcomes that handlers report for released jobs afterwards are dropped by the ack buffer, since
+another node may have claimed the job in the meantime.
+ */
+@Component
+public class WorkerDrain implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(WorkerDrain.class);
+
+    private final AdvancedNotificationService notificationService;
+    private final NotificationDispatcher dispatcher;
+    private final JobWorkerEngine workerEngine;
+    private final JobAckBuffer ackBuffer;
+    private final LeaseHeartbeat leaseHeartbeat;
+    private final AdvancedJobRepository jobsRepository;
+    private final Duration drainTimeout;
+
+    private volatile boolean running;
+
+    @Autowired
+    public WorkerDrain(AdvancedNotificationService notificationService,
+                       NotificationDispatcher dispatcher,
+                       JobWorkerEngine workerEngine,
+                       JobAckBuffer ackBuffer,
+                       LeaseHeartbeat leaseHeartbeat,
+                       AdvancedJobRepository jobsRepository,
+                       @Value("${jobqueue.worker.drain-timeout-ms:20000}") long drainTimeoutMs) {
+
+        this.notificationService = notificationService;
+        this.dispatcher = dispatcher;
+        this.workerEngine = workerEngine;
+        this.ackBuffer = ackBuffer;
+        this.leaseHeartbeat = leaseHeartbeat;
+        this.jobsRepository = jobsRepository;
+        this.drainTimeout = Duration.ofMillis(drainTimeoutMs);
+    }
+
+    @Override
+    public void start() {
+        // The engine starts claiming on its own once it is constructed
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            notificationService.shutdown();
+            dispatcher.stop();
+            release(workerEngine.drain(drainTimeout));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while draining, unfinished jobs run again once their lease expires");
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void release(Map<UUID, Boolean> unfinished) {
+        if (unfinished.isEmpty()) {
+            return;
+        }
+        List<UUID> unstarted = unfinished.entrySet().stream()
+                .filter(job -> !job.getValue())
+                .map(Map.Entry::getKey)
+                .toList();
+        ackBuffer.discard(unfinished.keySet());
+        unfinished.keySet().forEach(leaseHeartbeat::untrack);
+        try {
+            int released = jobsRepository.releaseJobs(unfinished.keySet(), unstarted);
+            log.info("Released {} unfinished jobs to the other nodes, {} of them never started", released, unstarted.size());
+        } catch (DataAccessException e) {
+            log.warn("Releasing {} unfinished jobs failed, they run again once their lease expires: {}",
+                    unfinished.size(), e.getMessage());
+        }
+    }
+}
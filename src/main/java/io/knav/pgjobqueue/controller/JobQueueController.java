@@ -0,0 +1,133 @@
+package io.knav.pgjobqueue.controller;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.knav.pgjobqueue.advancedscheduler.entities.EnqueueBatchResult;
+import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
+import io.knav.pgjobqueue.advancedscheduler.repositories.AdvancedJobRepository;
+import io.knav.pgjobqueue.advancedscheduler.services.IdempotencyGuard;
+import io.knav.pgjobqueue.advancedscheduler.services.JobEnqueueService;
+import io.knav.pgjobqueue.advancedscheduler.services.JobEventHub;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/job-queue")
+public class JobQueueController {
+
+    private final AdvancedJobRepository jobsRepository;
+    private final JobEnqueueService enqueueService;
+    private final IdempotencyGuard idempotencyGuard;
+    private final JobEventHub jobEventHub;
+    private final ObjectReader requestReader;
+
+    @Autowired
+    public JobQueueController(AdvancedJobRepository jobsRepository,
+                              JobEnqueueService enqueueService,
+                              IdempotencyGuard idempotencyGuard,
+                              JobEventHub jobEventHub,
+                              ObjectMapper objectMapper) {
+
+        this.jobsRepository = jobsRepository;
+        this.enqueueService = enqueueService;
+        this.idempotencyGuard = idempotencyGuard;
+        this.jobEventHub = jobEventHub;
+        this.requestReader = objectMapper.readerFor(JobQueueRequest.class);
+    }
+
+    /**
+     * Enqueues one job. A request repeated with the same Idempotency-Key header gets the job of the first one back,
+     * as stored now, instead of creating another; 409 if that job has already been deleted.
+     */
+    @PostMapping
+    public JobNg create(@RequestBody JobQueueRequest request,
+                        @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey) {
+        JobNg job = request.toDomain();
+        if (idempotencyKey == null) {
+            jobsRepository.addJob(job);
+            return job;
+        }
+        UUID jobId = idempotencyGuard.enqueueOnce(AdvancedJobRepository.IDEMPOTENCY_SCOPE, idempotencyKey, job.id(),
+                () -> jobsRepository.addJobIfAbsent(job, idempotencyKey));
+        if (jobId.equals(job.id())) {
+            return job;
+        }
+        JobNg existing = jobsRepository.findJob(jobId);
+        if (existing == null) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Idempotency-Key was used by job " + jobId + ", which no longer exists");
+        }
+        return existing;
+    }
+
+    /**
+     * Accepts a JSON array of jobs. The array is read element by element while the batches are written.
+     * Batches commit independently: the response lists every batch with its ids and, for a batch that was not
+     * written, its error, so a client resends only the failed batches.
+     */
+    @PostMapping(path = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public List<EnqueueBatchResult> createBatch(InputStream body) throws IOException {
+        return enqueue(body);
+    }
+
+    /**
+     * Accepts newline-delimited JSON, one job per line.
+     */
+    @PostMapping(path = "/stream", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public List<EnqueueBatchResult> createStream(InputStream body) throws IOException {
+        return enqueue(body);
+    }
+
+    /**
+     * Server-sent "status" events for one job of job_queue, starting with its current status and ending after a
+     * terminal one. Jobs of the simple scheduler (/jobs) have no terminal status and are not streamed.
+     */
+    @GetMapping(path = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter jobEvents(@PathVariable UUID id) {
+        return jobEventHub.subscribeToJob(id);
+    }
+
+    /**
+     * Server-sent "status" events for every job_queue job of a queue, until the client disconnects.
+     */
+    @GetMapping(path = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter queueEvents(@RequestParam(defaultValue = JobNg.DEFAULT_QUEUE) String queue) {
+        return jobEventHub.subscribeToQueue(queue);
+    }
+
+    private List<EnqueueBatchResult> enqueue(InputStream body) throws IOException {
+        // readValues unwraps a top-level array and also reads whitespace separated values, so it covers both formats
+        try (MappingIterator<JobQueueRequest> requests = requestReader.readValues(body)) {
+            Iterator<JobNg> jobs = new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return requests.hasNext();
+                }
+
+                @Override
+                public JobNg next() {
+                    return requests.next().toDomain();
+                }
+            };
+            return enqueueService.enqueue(jobs);
+        }
+    }
+}
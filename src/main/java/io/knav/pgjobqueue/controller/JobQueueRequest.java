@@ -0,0 +1,21 @@
+package io.knav.pgjobqueue.controller;
+
+import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
+import io.knav.pgjobqueue.advancedscheduler.entities.Metadata;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * @param priority optional, higher runs first
+ * @param runAt    optional, defers the job until this time
+ * @param queue    optional, the queue (tenant) to enqueue into
+ * @param type     optional, the job type that picks the handler
+ */
+public record JobQueueRequest(String documentId, Integer priority, Instant runAt, String queue, String type) {
+    public JobNg toDomain() {
+        return new JobNg(UUID.randomUUID(), new Metadata(documentId), "archive_pending",
+                priority == null ? 0 : priority, runAt, queue == null ? JobNg.DEFAULT_QUEUE : queue,
+                type == null ? JobNg.DEFAULT_TYPE : type);
+    }
+}
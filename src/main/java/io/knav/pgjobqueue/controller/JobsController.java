@@ -1,12 +1,18 @@
 package io.knav.pgjobqueue.controller;
 
+import io.knav.pgjobqueue.advancedscheduler.services.IdempotencyGuard;
 import io.knav.pgjobqueue.simplescheduler.entities.Job;
 import io.knav.pgjobqueue.simplescheduler.repositories.JobsRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.UUID;
 
 @RestController
 @RequestMapping("/jobs")
@@ -15,10 +21,31 @@ public class JobsController {
     @Autowired
     private JobsRepository jobsRepository;
 
+    @Autowired
+    private IdempotencyGuard idempotencyGuard;
+
+    /**
+     * A request repeated with the same Idempotency-Key header gets the job of the first one back, as stored now;
+     * 409 if that job has already been deleted.
+     */
     @PostMapping
-    public Job  create(@RequestBody JobRequest request) {
+    public Job  create(@RequestBody JobRequest request,
+                       @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey) {
         Job job = request.toDomain();
-        jobsRepository.addJob(job);
-        return job;
+        if (idempotencyKey == null) {
+            jobsRepository.addJob(job);
+            return job;
+        }
+        UUID jobId = idempotencyGuard.enqueueOnce(JobsRepository.IDEMPOTENCY_SCOPE, idempotencyKey, job.id(),
+                () -> jobsRepository.addJobIfAbsent(job, idempotencyKey));
+        if (jobId.equals(job.id())) {
+            return job;
+        }
+        Job existing = jobsRepository.findJob(jobId);
+        if (existing == null) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Idempotency-Key was used by job " + jobId + ", which no longer exists");
+        }
+        return existing;
     }
 }
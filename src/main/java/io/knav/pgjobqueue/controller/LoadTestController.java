@@ -0,0 +1,27 @@
+package io.knav.pgjobqueue.controller;
+
+import io.knav.pgjobqueue.advancedscheduler.loadtest.LoadTestRecorder;
+import io.knav.pgjobqueue.advancedscheduler.loadtest.LoadTestReport;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/load-test")
+@ConditionalOnProperty(name = "jobqueue.loadtest.enabled", havingValue = "true")
+public class LoadTestController {
+
+    private final LoadTestRecorder recorder;
+
+    @Autowired
+    public LoadTestController(LoadTestRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    @GetMapping("/report")
+    public LoadTestReport report() {
+        return recorder.report();
+    }
+}
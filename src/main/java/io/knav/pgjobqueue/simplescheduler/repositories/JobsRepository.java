@@ -1,6 +1,8 @@
 package io.knav.pgjobqueue.simplescheduler.repositories;
 
 import io.knav.pgjobqueue.simplescheduler.entities.Job;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
@@ -12,6 +14,13 @@ import java.util.UUID;
 @Service
 public class JobsRepository {
 
+    private static final Logger log = LoggerFactory.getLogger(JobsRepository.class);
+
+    /**
+     * Key space of the archive_jobs jobs in job_idempotency_keys.
+     */
+    public static final String IDEMPOTENCY_SCOPE = "archive_jobs";
+
     private final JdbcTemplate jdbcTemplate;
 
     @Autowired
@@ -24,6 +33,34 @@ public class JobsRepository {
          jdbcTemplate.update("INSERT INTO archive_jobs (id, description, status) VALUES (?,?,?)", job.id(), job.description(), job.status());
     }
 
+    /**
+     * Inserts the job unless another job already holds the idempotency key, in one statement.
+     *
+     * @return true if the job was inserted
+     */
+    public boolean addJobIfAbsent(Job job, String idempotencyKey) {
+        List<UUID> inserted = jdbcTemplate.queryForList("""
+                WITH key AS (
+                    INSERT INTO job_idempotency_keys (scope, idempotency_key, job_id) VALUES (?, ?, ?)
+                    ON CONFLICT (scope, idempotency_key) DO NOTHING
+                    RETURNING job_id
+                )
+                INSERT INTO archive_jobs (id, description, status)
+                SELECT job_id, ?, ? FROM key
+                RETURNING id
+                """, UUID.class, IDEMPOTENCY_SCOPE, idempotencyKey, job.id(), job.description(), job.status());
+        return !inserted.isEmpty();
+    }
+
+    /**
+     * @return the job as stored, null if it is not in archive_jobs
+     */
+    public Job findJob(UUID id) {
+        List<Job> jobs = jdbcTemplate.query("SELECT * FROM archive_jobs WHERE id = ?",
+                (rs, rowNum) -> new Job(rs.getObject("id", UUID.class), rs.getString("description"), rs.getString("status")), id);
+        return jobs.isEmpty() ? null : jobs.get(0);
+    }
+
     //TODO: Why do we need processing_active status if rows are being locked.
     // can't there be status like .. active => completed
     public Job fetchAndLockJobForProcessing(UUID id) {
@@ -37,7 +74,7 @@ public class JobsRepository {
             }
             return jobs.get(0); // Return the first job since ID should be unique
         } catch (Exception e) {
-            System.err.println("Error fetching job by ID: " + e.getMessage());
+            log.error("Error fetching job by ID: {}", e.getMessage());
             return null; // or handle more appropriately as per your error handling policy
         }
     }
@@ -2,16 +2,24 @@ package io.knav.pgjobqueue.simplescheduler.services;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.github.jasync.sql.db.postgresql.PostgreSQLConnection;
-import com.github.jasync.sql.db.postgresql.util.URLParser;
+import com.github.jasync.sql.db.postgresql.messages.backend.NotificationResponse;
+import io.knav.pgjobqueue.advancedscheduler.services.ListenConnectionFactory;
+import io.knav.pgjobqueue.advancedscheduler.services.ListenConnectionSupervisor;
 import io.knav.pgjobqueue.simplescheduler.entities.Job;
 import io.knav.pgjobqueue.simplescheduler.repositories.JobsRepository;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 
-import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static kotlin.jvm.internal.Reflection.typeOf;
 
@@ -54,56 +62,77 @@ WHERE status = 'processing' AND last_updated < NOW() - INTERVAL '1 hour';
 @Service
 public class NotificationService {
 
-    private final PostgreSQLConnection connection;
+    private static final Logger log = LoggerFactory.getLogger(NotificationService.class);
+
+    private final ListenConnectionSupervisor listenSupervisor;
     private final JobService jobService;
     private final JobsRepository jobsRepository;
+    private final ObjectMapper om = new ObjectMapper();
+    // Locking and processing block for seconds; they must stay off the jasync I/O thread the health check runs on
+    private final ExecutorService workers;
+    private final AtomicBoolean catchingUp = new AtomicBoolean();
 
     @Autowired
     public NotificationService(
-            @Value("${spring.datasource.url}") String url,
-            @Value("${spring.datasource.username}") String username,
-            @Value("${spring.datasource.password}") String password,
+            ListenConnectionFactory listenConnectionFactory,
             JobService jobService,
-            JobsRepository jobsRepository
+            JobsRepository jobsRepository,
+            @Value("${jobqueue.simple.worker-threads:4}") int workerThreads
             ) {
         this.jobService = jobService;
         this.jobsRepository = jobsRepository;
-
-        String connectionUrl = String.format("%s?user=%s&password=%s", url, username, password);
-        connection = new PostgreSQLConnection(URLParser.INSTANCE.parseOrDie(connectionUrl, Charset.defaultCharset()));
+        this.workers = Executors.newFixedThreadPool(workerThreads, new CustomizableThreadFactory("simple-job-worker-"));
+        this.listenSupervisor = listenConnectionFactory.supervise("simple", List.of("jobs_notification"),
+                this::onNotification, this::catchUp);
     }
 
     @PostConstruct
     public void init() {
+        listenSupervisor.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        listenSupervisor.stop();
+        workers.shutdownNow();
+    }
+
+    private void onNotification(NotificationResponse notification) {
+        log.debug("Received notification on channel {}: {}", notification.getChannel(), notification.getPayload());
+        String payload = notification.getPayload();
+        workers.execute(() -> process(payload));
+    }
+
+    private void process(String payload) {
+        Job job;
+        try {
+            job = om.readValue(payload, Job.class);
+        } catch (JsonProcessingException e) {
+            log.warn("Ignoring malformed job notification: {}", e.getMessage());
+            return;
+        }
+        Job lockedJob = jobsRepository.fetchAndLockJobForProcessing(job.id());
+        if (lockedJob != null) {
+            jobService.processJob(lockedJob);
+        }
+    }
 
-        ObjectMapper om = new ObjectMapper();
-
-        // Connect and listen to notifications
-        connection.connect().thenAccept(conn -> {
-            System.out.println("Connected to PostgreSQL database!");
-            conn.sendQuery("LISTEN jobs_notification").thenAccept(queryResult -> {
-                    System.out.println("Listening on channel 'jobs_notification'");
-                    }
-            );
-
-            // Handle notifications
-            conn.registerNotifyListener( notification -> {
-                System.out.println("**************************************************");
-                System.out.println("Received notification on channel " + notification.getChannel() + ": " + notification.getPayload());
-                System.out.println("**************************************************");
-                try {
-                    var job = om.readValue(notification.getPayload(), Job.class);
-                    Job lockedJob = jobsRepository.fetchAndLockJobForProcessing(job.id());
-                    jobService.processJob(lockedJob);
-
-                } catch (JsonProcessingException e) {
-                    throw new RuntimeException(e);
+    // Jobs notified while the connection was down are still active; drain them batch by batch on a worker thread
+    private void catchUp() {
+        if (!catchingUp.compareAndSet(false, true)) {
+            return;
+        }
+        workers.execute(() -> {
+            try {
+                List<Job> jobs;
+                while (!(jobs = jobsRepository.fetchJobs()).isEmpty()) {
+                    jobs.forEach(jobService::processJob);
                 }
-                return null;
-            });
-        }).exceptionally(throwable -> {
-            System.err.println("Connection failed: " + throwable.getMessage());
-            return null;
+            } catch (RuntimeException e) {
+                log.error("Catch-up after reconnect failed: {}", e.getMessage());
+            } finally {
+                catchingUp.set(false);
+            }
         });
     }
 }
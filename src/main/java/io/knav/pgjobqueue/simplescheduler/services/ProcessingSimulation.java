@@ -1,11 +1,15 @@
 package io.knav.pgjobqueue.simplescheduler.services;
 
 import io.knav.pgjobqueue.simplescheduler.entities.Job;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.Random;
 
 public class ProcessingSimulation {
 
+    private static final Logger log = LoggerFactory.getLogger(ProcessingSimulation.class);
+
     private static final int MAX_SLEEP_TIME_MS = 5000; // Maximum sleep time in milliseconds
     private static final double FAILURE_RATE = 0.2; // 20% chance of failure
 
@@ -17,7 +21,7 @@ public class ProcessingSimulation {
         int sleepTime = random.nextInt(MAX_SLEEP_TIME_MS + 1); // Random sleep time up to MAX_SLEEP_TIME_MS
 
         try {
-            System.out.println("Processing starts. Sleeping for " + sleepTime + " ms.");
+            log.debug("Processing starts. Sleeping for {} ms.", sleepTime);
             Thread.sleep(sleepTime); // Sleep for a random time up to 5 seconds
 
             // Randomly decide if this attempt should fail
@@ -32,12 +36,12 @@ public class ProcessingSimulation {
                 result += Math.sin(random.nextDouble()) * Math.cos(random.nextDouble());
             }
 
-            System.out.println("Processing completed for Job : " + job.id());
+            log.debug("Processing completed for Job : {}", job.id());
         } catch (InterruptedException e) {
-            System.err.println("Processing was interrupted for Job: "  + job.id());
+            log.warn("Processing was interrupted for Job: {}", job.id());
             Thread.currentThread().interrupt();
         } catch (RuntimeException e) {
-            System.err.println("Error during processing: " + e.getMessage());
+            log.debug("Error during processing: {}", e.getMessage());
         }
     }
 }
@@ -0,0 +1,23 @@
+package io.knav.pgjobqueue.advancedscheduler.entities;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BackoffTest {
+
+    @Test
+    void doublesWithinTheJitterUntilTheCap() {
+        for (int doublings = 0; doublings < 5; doublings++) {
+            long ceiling = 100L << doublings;
+            for (int i = 0; i < 100; i++) {
+                long delay = Backoff.jitteredMs(doublings, 100, 30_000);
+                assertTrue(delay >= ceiling / 2 && delay <= ceiling, "doublings " + doublings + ": " + delay);
+            }
+        }
+        for (int doublings : new int[]{10, 31, 64, Integer.MAX_VALUE}) {
+            long delay = Backoff.jitteredMs(doublings, 100, 30_000);
+            assertTrue(delay >= 15_000 && delay <= 30_000, "doublings " + doublings + ": " + delay);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package io.knav.pgjobqueue.advancedscheduler.entities;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecurringJobTest {
+
+    private static final Instant NOW = Instant.parse("2024-05-01T12:00:10Z");
+
+    private static RecurringJob everyTwoSeconds(Instant nextFireAt, boolean catchUp) {
+        return new RecurringJob("test", "0/2 * * * * *", JobNg.DEFAULT_TYPE, JobNg.DEFAULT_QUEUE, 0,
+                new Metadata("doc"), nextFireAt, catchUp);
+    }
+
+    @Test
+    void nothingIsDueBeforeTheNextFire() {
+        RecurringJob.Fires fires = everyTwoSeconds(NOW.plusSeconds(1), true).dueFires(NOW, 10);
+        assertTrue(fires.fireTimes().isEmpty());
+        assertEquals(NOW.plusSeconds(1), fires.nextFireAt());
+    }
+
+    @Test
+    void catchesUpEveryMissedFire() {
+        RecurringJob.Fires fires = everyTwoSeconds(NOW.minusSeconds(4), true).dueFires(NOW, 10);
+        assertEquals(List.of(NOW.minusSeconds(4), NOW.minusSeconds(2), NOW), fires.fireTimes());
+        assertEquals(NOW.plusSeconds(2), fires.nextFireAt());
+    }
+
+    @Test
+    void catchesUpInBatches() {
+        RecurringJob.Fires fires = everyTwoSeconds(NOW.minusSeconds(10), true).dueFires(NOW, 2);
+        assertEquals(List.of(NOW.minusSeconds(10), NOW.minusSeconds(8)), fires.fireTimes());
+        // The rest stays due
+        assertEquals(NOW.minusSeconds(6), fires.nextFireAt());
+    }
+
+    @Test
+    void collapsesMissedFiresWithoutCatchUp() {
+        RecurringJob.Fires fires = everyTwoSeconds(NOW.minusSeconds(3600), false).dueFires(NOW, 10);
+        assertEquals(List.of(NOW), fires.fireTimes());
+        assertEquals(NOW.plusSeconds(2), fires.nextFireAt());
+    }
+
+    @Test
+    void rejectsAnInvalidCronExpression() {
+        RecurringJob job = new RecurringJob("broken", "every two seconds", JobNg.DEFAULT_TYPE, JobNg.DEFAULT_QUEUE, 0,
+                new Metadata("doc"), NOW, true);
+        assertThrows(IllegalArgumentException.class, () -> job.dueFires(NOW, 10));
+    }
+}
@@ -0,0 +1,19 @@
+package io.knav.pgjobqueue.advancedscheduler.entities;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryPolicyTest {
+
+    private final RetryPolicy policy = new RetryPolicy(3, Duration.ofSeconds(1), Duration.ofMinutes(1));
+
+    @Test
+    void isExhaustedAfterMaxAttempts() {
+        assertFalse(policy.exhausted(2));
+        assertTrue(policy.exhausted(3));
+    }
+}
@@ -0,0 +1,51 @@
+package io.knav.pgjobqueue.advancedscheduler.loadtest;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    @Test
+    void countsSmallValuesExactly() {
+        for (int micros = 1; micros <= 10; micros++) {
+            histogram.record(micros);
+        }
+
+        assertEquals(10, histogram.count());
+        assertEquals(5, histogram.percentile(50));
+        assertEquals(10, histogram.percentile(99.9));
+    }
+
+    @Test
+    void keepsLargeValuesWithinThreePercent() {
+        // 1..10,000 ms in microseconds
+        for (int ms = 1; ms <= 10_000; ms++) {
+            histogram.record(ms * 1_000L);
+        }
+
+        assertWithin(5_000_000, histogram.percentile(50));
+        assertWithin(9_900_000, histogram.percentile(99));
+        assertWithin(9_990_000, histogram.percentile(99.9));
+    }
+
+    @Test
+    void bucketsAreContiguous() {
+        for (long value = 0; value < 1_000_000; value++) {
+            int index = LatencyHistogram.indexOf(value);
+            assertEquals(index, LatencyHistogram.indexOf(LatencyHistogram.valueOf(index)));
+        }
+    }
+
+    @Test
+    void reportsZeroWhenEmpty() {
+        assertEquals(0, histogram.percentile(99));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected * 0.03, "expected ~" + expected + " but was " + actual);
+    }
+}
@@ -0,0 +1,33 @@
+package io.knav.pgjobqueue.advancedscheduler.loadtest;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LoadProfileTest {
+
+    @Test
+    void constantRate() {
+        LoadProfile profile = new LoadProfile("constant", 500, 0, 0, 1, 60_000);
+
+        assertEquals(250, profile.jobsDueBy(500));
+        assertEquals(30_000, profile.jobsDueBy(60_000));
+    }
+
+    @Test
+    void rampStartsSlowAndAddsUpToTheAverageRate() {
+        LoadProfile profile = new LoadProfile("ramp", 1000, 0, 0, 1, 10_000);
+
+        assertEquals(1_250, profile.jobsDueBy(5_000));
+        assertEquals(5_000, profile.jobsDueBy(10_000));
+    }
+
+    @Test
+    void burstsArriveAtTheStartOfEachInterval() {
+        LoadProfile profile = new LoadProfile("bursty", 0, 0, 100, 1_000, 10_000);
+
+        assertEquals(100, profile.jobsDueBy(0));
+        assertEquals(100, profile.jobsDueBy(999));
+        assertEquals(200, profile.jobsDueBy(1_000));
+    }
+}
@@ -0,0 +1,60 @@
+package io.knav.pgjobqueue.advancedscheduler.repositories;
+
+import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
+import io.knav.pgjobqueue.advancedscheduler.entities.Metadata;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Runs against the docker-compose PostgreSQL; no worker claims, so the test decides every job's status
+@SpringBootTest(properties = {"jobqueue.worker.enabled=false", "jobqueue.recurring.enabled=false"})
+class AdvancedJobRepositoryTest {
+
+    private static final String QUEUE = "release-test";
+
+    @Autowired
+    private AdvancedJobRepository jobsRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void deleteJobs() {
+        jdbcTemplate.update("DELETE FROM job_payload WHERE id IN (SELECT id FROM job_queue WHERE queue_name = ?)",
+                QUEUE);
+        jdbcTemplate.update("DELETE FROM job_queue WHERE queue_name = ?", QUEUE);
+    }
+
+    @Test
+    void releasedJobsThatNeverStartedGetTheirAttemptBack() {
+        JobNg unstarted = enqueue();
+        JobNg started = enqueue();
+        List<JobNg> claimed = jobsRepository.fetchAndLockJobsForProcessing(List.of(unstarted.id(), started.id()), 2);
+        assertEquals(2, claimed.size());
+
+        int released = jobsRepository.releaseJobs(List.of(unstarted.id(), started.id()), List.of(unstarted.id()));
+
+        assertEquals(2, released);
+        assertEquals(Map.of("curr_job_status", "archive_pending", "attempts", 0), state(unstarted));
+        assertEquals(Map.of("curr_job_status", "archive_pending", "attempts", 1), state(started));
+    }
+
+    private JobNg enqueue() {
+        JobNg job = new JobNg(UUID.randomUUID(), new Metadata(QUEUE), "archive_pending", 0, null, QUEUE,
+                JobNg.DEFAULT_TYPE);
+        jobsRepository.addJob(job);
+        return job;
+    }
+
+    private Map<String, Object> state(JobNg job) {
+        return jdbcTemplate.queryForMap("SELECT curr_job_status, attempts FROM job_queue WHERE id = ?", job.id());
+    }
+}
@@ -0,0 +1,54 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private final AdaptiveConcurrencyLimiter limiter =
+            new AdaptiveConcurrencyLimiter(1, 10, 4, Duration.ofMillis(50));
+
+    @Test
+    void growsWhileClaimsAreFastAndBacklogIsFull() {
+        limiter.onClaim(Duration.ofMillis(5), true, 0.1);
+        limiter.onClaim(Duration.ofMillis(5), true, 0.1);
+
+        assertEquals(6, limiter.limit());
+    }
+
+    @Test
+    void keepsLimitWhenBacklogIsDrained() {
+        limiter.onClaim(Duration.ofMillis(5), false, 0.1);
+
+        assertEquals(4, limiter.limit());
+    }
+
+    @Test
+    void shrinksOnSlowClaims() {
+        limiter.onClaim(Duration.ofMillis(200), true, 0.1);
+
+        assertEquals(3, limiter.limit());
+    }
+
+    @Test
+    void shrinksWhenConnectionPoolIsSaturated() {
+        limiter.onClaim(Duration.ofMillis(5), true, 1.0);
+        limiter.onClaim(Duration.ofMillis(5), true, 1.0);
+        limiter.onClaim(Duration.ofMillis(5), true, 1.0);
+        limiter.onClaim(Duration.ofMillis(5), true, 1.0);
+
+        assertEquals(1, limiter.limit());
+    }
+
+    @Test
+    void neverExceedsMaximum() {
+        for (int i = 0; i < 20; i++) {
+            limiter.onClaim(Duration.ofMillis(5), true, 0);
+        }
+
+        assertEquals(10, limiter.limit());
+    }
+}
@@ -0,0 +1,118 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import io.knav.pgjobqueue.advancedscheduler.entities.JobEvent;
+import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
+import io.knav.pgjobqueue.advancedscheduler.entities.JobResult;
+import io.knav.pgjobqueue.advancedscheduler.entities.Metadata;
+import io.knav.pgjobqueue.advancedscheduler.repositories.AdvancedJobRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Runs against the docker-compose PostgreSQL; no worker claims, so the test decides every job's status
+@SpringBootTest(properties = {"jobqueue.worker.enabled=false", "jobqueue.recurring.enabled=false"})
+class AdvancedJobServiceTest {
+
+    private static final String QUEUE = "chain-test";
+
+    @Autowired
+    private AdvancedJobService jobService;
+
+    @Autowired
+    private AdvancedJobRepository jobsRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void deleteJobs() {
+        jdbcTemplate.update("DELETE FROM job_payload WHERE id IN (SELECT id FROM job_queue WHERE queue_name = ?)",
+                QUEUE);
+        jdbcTemplate.update("DELETE FROM job_queue WHERE queue_name = ?", QUEUE);
+    }
+
+    @Test
+    void claimsDueFollowUpsUpToTheLocalSlotsAndLeavesTheRestPending() {
+        JobNg parent = claimed(enqueue());
+        JobNg first = job(null);
+        JobNg second = job(null);
+        JobNg beyondSlots = job(null);
+        // Not due yet, so it neither runs here nor takes a slot
+        JobNg delayed = job(Instant.now().plus(Duration.ofHours(1)));
+
+        List<JobNg> chained = jobService.processJobs(handler(List.of(delayed, first, second, beyondSlots)),
+                List.of(parent), 2);
+
+        assertEquals(List.of(first.id(), second.id()), chained.stream().map(JobNg::id).toList());
+        chained.forEach(job -> {
+            assertEquals("archive_processing", job.CurrentJobStatus());
+            assertEquals(1, job.attempts());
+        });
+        assertEquals(Map.of(
+                parent.id(), "archive_completed",
+                first.id(), "archive_processing",
+                second.id(), "archive_processing",
+                beyondSlots.id(), "archive_pending",
+                delayed.id(), "archive_pending"), statuses(parent, first, second, beyondSlots, delayed));
+    }
+
+    @Test
+    void aJobThatLostItsLeaseProducesNoFollowUp() {
+        // Never claimed here, like a job whose lease expired and was released while its handler ran
+        JobNg parent = enqueue();
+        JobNg next = job(null);
+
+        List<JobNg> chained = jobService.processJobs(handler(List.of(next)), List.of(parent), 4);
+
+        assertTrue(chained.isEmpty());
+        assertEquals(Map.of(parent.id(), "archive_pending"), statuses(parent, next));
+    }
+
+    private JobNg enqueue() {
+        JobNg job = job(null);
+        jobsRepository.addJob(job);
+        return job;
+    }
+
+    private JobNg claimed(JobNg job) {
+        assertEquals(1, jobsRepository.updateJobStatuses(List.of(job.id()), "archive_pending", "archive_processing"));
+        return new JobNg(job.id(), job.metadata(), "archive_processing", job.priority(), job.runAt(), job.queueName(),
+                job.jobType(), Instant.now(), 1);
+    }
+
+    private Map<UUID, String> statuses(JobNg... jobs) {
+        return jobsRepository.findJobStatuses(List.of(jobs).stream().map(JobNg::id).toList()).stream()
+                .collect(Collectors.toMap(JobEvent::jobId, JobEvent::status));
+    }
+
+    private static JobNg job(Instant runAt) {
+        return new JobNg(UUID.randomUUID(), new Metadata("chain-test"), "archive_pending", 0, runAt, QUEUE,
+                JobNg.DEFAULT_TYPE);
+    }
+
+    private static JobHandler handler(List<JobNg> next) {
+        return new JobHandler() {
+            @Override
+            public String jobType() {
+                return JobNg.DEFAULT_TYPE;
+            }
+
+            @Override
+            public List<JobResult> handle(List<JobNg> jobs) {
+                return jobs.stream().map(job -> JobResult.success(job.id(), next)).toList();
+            }
+        };
+    }
+}
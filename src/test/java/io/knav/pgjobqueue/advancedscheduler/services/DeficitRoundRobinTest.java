@@ -0,0 +1,57 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeficitRoundRobinTest {
+
+    private final DeficitRoundRobin drr = new DeficitRoundRobin(Map.of("bulk", 4), 1);
+
+    @Test
+    void splitsBudgetByWeight() {
+        Map<String, Integer> allocation = drr.allocate(List.of("bulk", "small"), 10);
+
+        assertEquals(Map.of("bulk", 8, "small", 2), allocation);
+    }
+
+    @Test
+    void keepsWeightsWithBudgetOfOne() {
+        Map<String, Integer> totals = new HashMap<>();
+        for (int i = 0; i < 50; i++) {
+            drr.allocate(List.of("bulk", "small"), 1).forEach((queue, slots) -> totals.merge(queue, slots, Integer::sum));
+        }
+
+        assertEquals(Map.of("bulk", 40, "small", 10), totals);
+    }
+
+    @Test
+    void smallQueueWaitsAtMostOneTurnOfTheOthers() {
+        int sinceSmall = 0;
+        for (int i = 0; i < 100; i++) {
+            if (drr.allocate(List.of("bulk", "small"), 1).containsKey("small")) {
+                sinceSmall = 0;
+            } else {
+                assertTrue(++sinceSmall <= 4);
+            }
+        }
+    }
+
+    @Test
+    void dropsCreditOfDrainedQueues() {
+        drr.allocate(List.of("bulk", "small"), 2);
+
+        assertEquals(Map.of("small", 3), drr.allocate(List.of("small"), 3));
+    }
+
+    @Test
+    void parsesWeights() {
+        assertEquals(Map.of("default", 1, "tenant-a", 4), DeficitRoundRobin.parseWeights("default:1, tenant-a:4"));
+        assertEquals(Map.of(), DeficitRoundRobin.parseWeights(""));
+    }
+}
@@ -0,0 +1,70 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import io.knav.pgjobqueue.advancedscheduler.repositories.AdvancedJobRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JobAckBufferTest {
+
+    private final List<UUID> written = new ArrayList<>();
+    private final AdvancedJobRepository jobsRepository =
+            new AdvancedJobRepository(null, null, null, new SimpleMeterRegistry(), Optional.empty(), "copy") {
+                @Override
+                public int updateJobStatuses(Collection<UUID> ids, String fromStatus, String toStatus) {
+                    written.addAll(ids);
+                    return ids.size();
+                }
+
+                @Override
+                public int retryJobs(List<UUID> ids, List<Instant> runAts) {
+                    written.addAll(ids);
+                    return ids.size();
+                }
+            };
+
+    @Test
+    void dropsBufferedAndLateOutcomesOfDiscardedJobs() {
+        JobAckBuffer buffer = buffer("buffered");
+        UUID bufferedBeforeDiscard = UUID.randomUUID();
+        UUID reportedAfterDiscard = UUID.randomUUID();
+        UUID kept = UUID.randomUUID();
+
+        buffer.ack(bufferedBeforeDiscard, "archive_completed");
+        buffer.ack(kept, "archive_completed");
+        buffer.discard(List.of(bufferedBeforeDiscard, reportedAfterDiscard));
+        buffer.ack(reportedAfterDiscard, "archive_completed");
+        buffer.retry(reportedAfterDiscard, Instant.now());
+        buffer.flush();
+
+        assertEquals(List.of(kept), written);
+        assertEquals(0, buffer.pendingAcks());
+    }
+
+    @Test
+    void dropsOutcomesOfDiscardedJobsInImmediateMode() {
+        JobAckBuffer buffer = buffer("immediate");
+        UUID released = UUID.randomUUID();
+        UUID kept = UUID.randomUUID();
+
+        buffer.discard(List.of(released));
+        buffer.ack(released, "archive_completed");
+        buffer.retry(released, Instant.now());
+        buffer.ack(kept, "archive_dead");
+
+        assertEquals(List.of(kept), written);
+    }
+
+    private JobAckBuffer buffer(String mode) {
+        // Not started: the tests flush themselves instead of racing the flusher thread
+        return new JobAckBuffer(jobsRepository, Optional.empty(), new SimpleMeterRegistry(), mode, 500, 50, 4);
+    }
+}
@@ -0,0 +1,71 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
+import io.knav.pgjobqueue.advancedscheduler.entities.JobResult;
+import io.knav.pgjobqueue.advancedscheduler.entities.Metadata;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JobBatcherTest {
+
+    // Never started: scheduled flushes stay pending, so only size-triggered batches come out
+    private final DelayedJobTimer timer = new DelayedJobTimer(10, 64);
+    private final List<List<JobNg>> batches = new ArrayList<>();
+
+    @Test
+    void splitsClaimIntoFullBatches() {
+        JobBatcher batcher = new JobBatcher(handler(3, Duration.ZERO), timer, batches::add);
+
+        batcher.add(jobs(7));
+
+        assertEquals(List.of(3, 3, 1), batches.stream().map(List::size).toList());
+    }
+
+    @Test
+    void holdsPartialBatchUntilFilled() {
+        JobBatcher batcher = new JobBatcher(handler(3, Duration.ofSeconds(10)), timer, batches::add);
+
+        batcher.add(jobs(2));
+        assertEquals(0, batches.size());
+
+        batcher.add(jobs(2));
+        assertEquals(List.of(3), batches.stream().map(List::size).toList());
+    }
+
+    private static List<JobNg> jobs(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new JobNg(UUID.randomUUID(), new Metadata("doc-" + i), "archive_processing"))
+                .toList();
+    }
+
+    private static JobHandler handler(int batchSize, Duration batchWait) {
+        return new JobHandler() {
+            @Override
+            public String jobType() {
+                return JobNg.DEFAULT_TYPE;
+            }
+
+            @Override
+            public int maxBatchSize() {
+                return batchSize;
+            }
+
+            @Override
+            public Duration maxBatchWait() {
+                return batchWait;
+            }
+
+            @Override
+            public List<JobResult> handle(List<JobNg> jobs) {
+                return List.of();
+            }
+        };
+    }
+}
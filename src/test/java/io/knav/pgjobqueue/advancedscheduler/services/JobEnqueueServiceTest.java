@@ -0,0 +1,72 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import io.knav.pgjobqueue.advancedscheduler.entities.EnqueueBatchResult;
+import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
+import io.knav.pgjobqueue.advancedscheduler.entities.Metadata;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JobEnqueueServiceTest {
+
+    private final List<List<JobNg>> written = new ArrayList<>();
+
+    @Test
+    void keepsWritingAfterAFailedBatch() {
+        JobEnqueueService service = new JobEnqueueService(batch -> {
+            if (written.size() == 1) {
+                written.add(List.of());
+                throw new IllegalStateException("connection reset");
+            }
+            written.add(batch);
+        }, null, 2, 4);
+        List<JobNg> jobs = jobs(5);
+
+        List<EnqueueBatchResult> results = service.enqueue(jobs.iterator());
+
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).succeeded());
+        assertFalse(results.get(1).succeeded());
+        assertEquals("connection reset", results.get(1).error());
+        assertEquals(List.of(jobs.get(2).id(), jobs.get(3).id()), results.get(1).ids());
+        assertTrue(results.get(2).succeeded());
+        assertEquals(List.of(jobs.get(4).id()), results.get(2).ids());
+    }
+
+    @Test
+    void keepsSendingAfterAFailedAsyncBatch() {
+        // One batch in flight at a time, so the failed batch is waited on before the next one is sent
+        JobEnqueueService service = new JobEnqueueService(batch -> {
+            throw new AssertionError("the sync writer must not be used");
+        }, batch -> {
+            written.add(batch);
+            return written.size() == 2
+                    ? CompletableFuture.failedFuture(new IllegalStateException("connection reset"))
+                    : CompletableFuture.completedFuture(null);
+        }, 2, 1);
+        List<JobNg> jobs = jobs(5);
+
+        List<EnqueueBatchResult> results = service.enqueue(jobs.iterator());
+
+        assertEquals(3, written.size());
+        assertEquals(List.of(0, 1, 2), results.stream().map(EnqueueBatchResult::batch).toList());
+        assertTrue(results.get(0).succeeded());
+        assertEquals("connection reset", results.get(1).error());
+        assertTrue(results.get(2).succeeded());
+        assertEquals(List.of(jobs.get(4).id()), results.get(2).ids());
+    }
+
+    static List<JobNg> jobs(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new JobNg(UUID.randomUUID(), new Metadata("doc-" + i), "archive_pending"))
+                .toList();
+    }
+}
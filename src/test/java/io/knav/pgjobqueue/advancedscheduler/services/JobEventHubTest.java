@@ -0,0 +1,126 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.knav.pgjobqueue.advancedscheduler.entities.JobEvent;
+import io.knav.pgjobqueue.advancedscheduler.repositories.AdvancedJobRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JobEventHubTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<List<String>> registered = new ArrayList<>();
+    private final AdvancedJobRepository jobsRepository =
+            new AdvancedJobRepository(null, null, null, meterRegistry, Optional.empty(), "copy") {
+                @Override
+                public void watchQueues(String nodeId, Collection<String> queues, long ttlSeconds) {
+                    registered.add(List.copyOf(queues));
+                }
+
+                @Override
+                public void unwatchQueues(String nodeId) {
+                }
+
+                @Override
+                public List<JobEvent> findJobStatuses(Collection<UUID> ids) {
+                    throw new DataAccessResourceFailureException("connection refused");
+                }
+            };
+    private final ListenConnectionFactory listenConnectionFactory = new ListenConnectionFactory(
+            "jdbc:postgresql://localhost:5432/jobs", "jobs", "jobs", meterRegistry, 5000, 2000, 100, 30000);
+
+    @Test
+    void registersAQueueOnceForAllItsSubscribers() {
+        JobEventHub hub = hub(Executors.newSingleThreadExecutor(), 16);
+        try {
+            hub.subscribeToQueue("reports");
+            hub.subscribeToQueue("reports");
+            hub.subscribeToQueue("invoices");
+
+            assertEquals(List.of(List.of("reports"), List.of("invoices")), registered);
+        } finally {
+            hub.stop();
+        }
+    }
+
+    @Test
+    void evictsASubscriberThatFallsBehind() {
+        // The only sender waits until the end of the test, so every event stays in the subscriber's buffer
+        CountDownLatch sendersReleased = new CountDownLatch(1);
+        ExecutorService senders = Executors.newSingleThreadExecutor();
+        senders.execute(() -> {
+            try {
+                sendersReleased.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        JobEventHub hub = hub(senders, 2);
+        try {
+            hub.subscribeToQueue("reports");
+
+            hub.dispatch(statusEvent("reports", 2));
+            assertEquals(0.0, evicted());
+            assertEquals(1.0, openStreams());
+
+            hub.dispatch(statusEvent("reports", 1));
+            assertEquals(1.0, evicted());
+            assertEquals(0.0, openStreams());
+
+            // The evicted subscriber gets nothing more, and is not evicted twice
+            hub.dispatch(statusEvent("reports", 3));
+            assertEquals(1.0, evicted());
+        } finally {
+            sendersReleased.countDown();
+            hub.stop();
+        }
+    }
+
+    @Test
+    void closesAJobStreamWhoseStatusCannotBeRead() throws Exception {
+        ExecutorService senders = Executors.newSingleThreadExecutor();
+        JobEventHub hub = hub(senders, 16);
+        try {
+            hub.subscribeToJob(UUID.randomUUID());
+
+            // Runs after the subscription's first read
+            senders.submit(() -> {}).get();
+            assertEquals(0.0, openStreams());
+        } finally {
+            hub.stop();
+        }
+    }
+
+    private JobEventHub hub(ExecutorService senders, int bufferSize) {
+        return new JobEventHub(jobsRepository, new NotificationPayloads(new ObjectMapper()), listenConnectionFactory,
+                meterRegistry, senders, bufferSize, 60_000, 30);
+    }
+
+    private double evicted() {
+        return meterRegistry.get("jobqueue.events.evicted").counter().count();
+    }
+
+    private double openStreams() {
+        return meterRegistry.get("jobqueue.events.subscribers").gauge().value();
+    }
+
+    private static String statusEvent(String queue, int jobs) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < jobs; i++) {
+            ids.add("\"" + UUID.randomUUID() + "\"");
+        }
+        return "{\"queue\": \"" + queue + "\", \"status\": \"archive_processing\", \"ids\": " + ids + "}";
+    }
+}
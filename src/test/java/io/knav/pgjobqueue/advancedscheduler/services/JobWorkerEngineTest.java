@@ -0,0 +1,113 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import io.knav.pgjobqueue.advancedscheduler.entities.JobNg;
+import io.knav.pgjobqueue.advancedscheduler.entities.JobResult;
+import io.knav.pgjobqueue.advancedscheduler.entities.Metadata;
+import io.knav.pgjobqueue.advancedscheduler.repositories.AdvancedJobRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Runs against the docker-compose PostgreSQL with the claim loop on
+@SpringBootTest(properties = "jobqueue.recurring.enabled=false")
+class JobWorkerEngineTest {
+
+    private static final String QUEUE = "engine-chain-test";
+    private static final int LEAVES = 3;
+
+    private static final CountDownLatch leavesDone = new CountDownLatch(LEAVES);
+    private static final Map<UUID, ClaimPath> leafClaims = new ConcurrentHashMap<>();
+
+    @TestConfiguration
+    static class ChainHandlers {
+
+        @Bean
+        JobHandler chainParentHandler() {
+            return new JobHandler() {
+                @Override
+                public String jobType() {
+                    return "chain-parent";
+                }
+
+                @Override
+                public List<JobResult> handle(List<JobNg> jobs) {
+                    return jobs.stream().map(job -> JobResult.success(job.id(), IntStream.range(0, LEAVES)
+                            .mapToObj(i -> new JobNg(UUID.randomUUID(), job.metadata(), "archive_pending", 0, null,
+                                    QUEUE, "chain-leaf"))
+                            .toList())).toList();
+                }
+            };
+        }
+
+        @Bean
+        JobHandler chainLeafHandler() {
+            return new JobHandler() {
+                @Override
+                public String jobType() {
+                    return "chain-leaf";
+                }
+
+                @Override
+                public List<JobResult> handle(List<JobNg> jobs) {
+                    jobs.forEach(job -> leavesDone.countDown());
+                    return jobs.stream().map(job -> JobResult.success(job.id())).toList();
+                }
+            };
+        }
+
+        @Bean
+        ClaimListener leafClaimRecorder() {
+            return (jobs, path) -> jobs.stream()
+                    .filter(job -> "chain-leaf".equals(job.jobType()))
+                    .forEach(job -> leafClaims.put(job.id(), path));
+        }
+    }
+
+    @Autowired
+    private JobWorkerEngine workerEngine;
+
+    @Autowired
+    private AdvancedJobRepository jobsRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void deleteJobs() {
+        jdbcTemplate.update("DELETE FROM job_payload WHERE id IN (SELECT id FROM job_queue WHERE queue_name = ?)",
+                QUEUE);
+        jdbcTemplate.update("DELETE FROM job_queue WHERE queue_name = ?", QUEUE);
+    }
+
+    @Test
+    void followUpsInheritTheSlotsOfTheirBatchAndGiveThemBack() throws InterruptedException {
+        jobsRepository.addJob(new JobNg(UUID.randomUUID(), new Metadata("engine-chain-test"), "archive_pending", 0, null,
+                QUEUE, "chain-parent"));
+
+        assertTrue(leavesDone.await(30, TimeUnit.SECONDS));
+        // The parent ran in a batch of one, so one leaf runs in its slot and the others are claimed from the queue
+        assertEquals(LEAVES, leafClaims.size());
+        assertEquals(1, leafClaims.values().stream().filter(path -> path == ClaimPath.CHAINED).count());
+        // Every slot reserved for the parent and its leaves was released exactly once
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (workerEngine.inFlight() != 0 && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, workerEngine.inFlight());
+    }
+}
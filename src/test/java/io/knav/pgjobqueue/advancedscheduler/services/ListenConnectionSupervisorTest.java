@@ -0,0 +1,158 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import com.github.jasync.sql.db.postgresql.messages.backend.NotificationResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ListenConnectionSupervisorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<FakeConnection> opened = new CopyOnWriteArrayList<>();
+    private final AtomicInteger catchUps = new AtomicInteger();
+    private final ListenConnectionSupervisor supervisor = new ListenConnectionSupervisor("test", this::open,
+            List.of("job_queue_wakeup"), notification -> {}, catchUps::incrementAndGet,
+            10, 10_000, 1, 5, meterRegistry);
+
+    @AfterEach
+    void stop() {
+        supervisor.stop();
+    }
+
+    @Test
+    void reconnectsAfterTheConnectionIsLost() throws InterruptedException {
+        supervisor.start();
+        FakeConnection first = awaitOpened(1);
+        first.connected.complete(null);
+        await(() -> catchUps.get() == 1);
+        assertEquals(ListenConnectionSupervisor.State.LISTENING, supervisor.state());
+        assertEquals(List.of("LISTEN job_queue_wakeup"), first.queries.subList(0, 1));
+
+        first.open = false;
+        FakeConnection second = awaitOpened(2);
+        assertTrue(first.disconnected);
+        second.connected.complete(null);
+
+        await(() -> catchUps.get() == 2);
+        assertEquals(ListenConnectionSupervisor.State.LISTENING, supervisor.state());
+        assertEquals(1.0, meterRegistry.get("jobqueue.listen.reconnects").counter().count());
+    }
+
+    @Test
+    void ignoresAHealthCheckFailureOfAReplacedConnection() throws InterruptedException {
+        supervisor.start();
+        FakeConnection first = awaitOpened(1);
+        first.answerPings = false;
+        first.connected.complete(null);
+        await(() -> first.pendingPings.size() > 0);
+
+        first.open = false;
+        FakeConnection second = awaitOpened(2);
+        second.connected.complete(null);
+        await(() -> catchUps.get() == 2);
+
+        // The health checks of the dropped connection fail late, after its replacement is listening
+        first.pendingPings.forEach(ping -> ping.completeExceptionally(new IllegalStateException("closed")));
+        Thread.sleep(100);
+
+        assertEquals(2, opened.size());
+        assertFalse(second.disconnected);
+        assertEquals(ListenConnectionSupervisor.State.LISTENING, supervisor.state());
+    }
+
+    @Test
+    void stopClosesTheConnectionOnTheSupervisorThread() throws InterruptedException {
+        supervisor.start();
+        FakeConnection first = awaitOpened(1);
+        first.connected.complete(null);
+        await(() -> catchUps.get() == 1);
+
+        supervisor.stop();
+
+        assertTrue(first.disconnected);
+        assertTrue(first.disconnectedOn.startsWith("listen-supervisor-test-"), first.disconnectedOn);
+        assertEquals(ListenConnectionSupervisor.State.DISCONNECTED, supervisor.state());
+    }
+
+    @Test
+    void closesAConnectionThatCompletesAfterStop() throws InterruptedException {
+        supervisor.start();
+        FakeConnection first = awaitOpened(1);
+
+        supervisor.stop();
+        first.disconnected = false;
+        first.connected.complete(null);
+
+        assertTrue(first.disconnected);
+        assertEquals(0, catchUps.get());
+    }
+
+    private ListenConnectionSupervisor.ListenConnection open() {
+        FakeConnection connection = new FakeConnection();
+        opened.add(connection);
+        return connection;
+    }
+
+    private FakeConnection awaitOpened(int count) throws InterruptedException {
+        await(() -> opened.size() >= count);
+        return opened.get(count - 1);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(5);
+        }
+    }
+
+    private static class FakeConnection implements ListenConnectionSupervisor.ListenConnection {
+
+        final CompletableFuture<Void> connected = new CompletableFuture<>();
+        final List<String> queries = new CopyOnWriteArrayList<>();
+        final List<CompletableFuture<Object>> pendingPings = new CopyOnWriteArrayList<>();
+        volatile boolean open = true;
+        volatile boolean answerPings = true;
+        volatile boolean disconnected;
+        volatile String disconnectedOn;
+
+        @Override
+        public CompletableFuture<?> connect(Consumer<NotificationResponse> listener) {
+            return connected;
+        }
+
+        @Override
+        public CompletableFuture<?> sendQuery(String query) {
+            queries.add(query);
+            if (query.startsWith("LISTEN") || answerPings) {
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Object> ping = new CompletableFuture<>();
+            pendingPings.add(ping);
+            return ping;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return open && !disconnected;
+        }
+
+        @Override
+        public void disconnect() {
+            disconnected = true;
+            disconnectedOn = Thread.currentThread().getName();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.knav.pgjobqueue.advancedscheduler.entities.JobEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NotificationPayloadsTest {
+
+    private final NotificationPayloads payloads = new NotificationPayloads(new ObjectMapper());
+
+    @Test
+    void splitsAStatusEventIntoOneEventPerJob() {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+
+        List<JobEvent> events = payloads.jobEvents(
+                "{\"queue\": \"reports\", \"status\": \"archive_completed\", \"ids\": [\"" + first + "\", \"" + second + "\"]}");
+
+        assertEquals(List.of(new JobEvent(first, "reports", "archive_completed"),
+                new JobEvent(second, "reports", "archive_completed")), events);
+    }
+
+    @Test
+    void ignoresPayloadsWithoutIds() {
+        assertTrue(payloads.jobEvents("{\"id\": \"" + UUID.randomUUID() + "\"}").isEmpty());
+    }
+
+    @Test
+    void ignoresMalformedPayloads() {
+        assertTrue(payloads.jobEvents("{\"queue\": \"reports\", \"ids\": [\"not-a-uuid\"]}").isEmpty());
+        assertTrue(payloads.jobEvents("not json").isEmpty());
+    }
+}
@@ -0,0 +1,50 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimeWindowedBloomFilterTest {
+
+    private final TimeWindowedBloomFilter filter = new TimeWindowedBloomFilter(1_000, 10_000, 0.01, 0);
+
+    @Test
+    void remembersEveryKeyAddedWithinTheWindow() {
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("key-" + i, 500);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("key-" + i, 1_400), "key-" + i);
+        }
+    }
+
+    @Test
+    void keepsFalsePositivesNearTheConfiguredRate() {
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("key-" + i, 0);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("other-" + i, 0)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 2_000, falsePositives + " false positives");
+    }
+
+    @Test
+    void forgetsKeysAfterTwoWindows() {
+        filter.add("retried", 100);
+
+        assertTrue(filter.mightContain("retried", 1_500));
+        assertFalse(filter.mightContain("retried", 2_100));
+    }
+
+    @Test
+    void forgetsKeysAfterALongPause() {
+        filter.add("retried", 100);
+
+        assertFalse(filter.mightContain("retried", 10_000));
+    }
+}
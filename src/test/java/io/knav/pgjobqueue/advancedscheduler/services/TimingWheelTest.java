@@ -0,0 +1,70 @@
+package io.knav.pgjobqueue.advancedscheduler.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+
+    private final TimingWheel wheel = new TimingWheel(10, 8, 1_000);
+    private final List<String> fired = new ArrayList<>();
+
+    @Test
+    void rejectsTasksDueWithinTheCurrentTick() {
+        assertFalse(wheel.add(1_005, () -> fired.add("now")));
+    }
+
+    @Test
+    void firesTaskOnceItsTickHasPassed() {
+        wheel.add(1_050, () -> fired.add("a"));
+
+        run(wheel.advanceClock(1_049));
+        assertTrue(fired.isEmpty());
+
+        run(wheel.advanceClock(1_050));
+        assertEquals(List.of("a"), fired);
+        assertEquals(Long.MAX_VALUE, wheel.nextExpiration());
+    }
+
+    @Test
+    void cascadesTasksFromTheOverflowWheel() {
+        wheel.add(1_500, () -> fired.add("far"));
+        wheel.add(1_030, () -> fired.add("near"));
+
+        run(wheel.advanceClock(1_100));
+        assertEquals(List.of("near"), fired);
+
+        run(wheel.advanceClock(1_499));
+        assertEquals(List.of("near"), fired);
+
+        run(wheel.advanceClock(1_500));
+        assertEquals(List.of("near", "far"), fired);
+    }
+
+    @Test
+    void firesEverythingDueAfterALongPause() {
+        wheel.add(1_020, () -> fired.add("a"));
+        wheel.add(2_000, () -> fired.add("b"));
+        wheel.add(9_000, () -> fired.add("c"));
+
+        run(wheel.advanceClock(10_000));
+
+        assertEquals(3, fired.size());
+    }
+
+    @Test
+    void reportsNextExpiration() {
+        wheel.add(1_042, () -> fired.add("a"));
+
+        assertEquals(1_040, wheel.nextExpiration());
+    }
+
+    private static void run(List<Runnable> tasks) {
+        tasks.forEach(Runnable::run);
+    }
+}